@@ -1,14 +1,19 @@
 import java.util.Date;
 
+import prng.RandomMetrics;
+import prng.ReservoirRandom;
 import trueRandom.TrueRandom;
 
 public class UI {
 	
 	TrueRandom random;
+	// serves the password characters a byte at a time
+	ReservoirRandom characters;
 	int rows = 0;
 	
 	public UI() {
 		random = new TrueRandom();
+		characters = new ReservoirRandom(random);
 	}
 	
 	public static void main(String[] args) throws InterruptedException {
@@ -39,13 +44,11 @@ public class UI {
 		
 		result.append("\nRandom ascii passwords of length 8 to 24 characters:\n");
 		for (int i = 0; i < 10; i++) {
-			byte[] password = new byte[1];
 			int counter = 0;
-			int size = 8 + random.nextInt(12);
+			int size = 8 + characters.nextInt(12);
 			
 			while (counter < size) {
-				random.nextBytes(password);
-				byte c = password[0];
+				byte c = characters.nextByte();
 				if (c > 0x20 && c < 0x7f) {
 					result.append((char)c);
 					counter++;
@@ -57,14 +60,11 @@ public class UI {
 		
 		result.append("\nRandom alphanumeric strings from 16 to 48 characters:\n");
 		for (int i = 0; i < 10; i++) {
-			byte[] password = new byte[1];
-
 			int counter = 0;
-			int size = 16 + random.nextInt(32);
+			int size = 16 + characters.nextInt(32);
 			
 			while (counter < size) {
-				random.nextBytes(password);
-				byte c = password[0];
+				byte c = characters.nextByte();
 				
 				if ( (c > 0x2f && c < 0x3a)  || (c > 0x40 && c < 0x5b) || (c > 0x60 && c < 0x7b) ) {
 					result.append((char)c);
@@ -76,14 +76,21 @@ public class UI {
 		}
 		result.append("\n");
 		result.append("\n");
-		result.append("total calls for random numbers: " + random.getCalls() + "\n");
+		// read the counters once, so the totals and the per generator counts agree
+		RandomMetrics.Snapshot metrics = random.getMetrics();
+		result.append("total calls for random numbers: " + metrics.getDraws() + "\n");
+		result.append("random bytes generated        : " + metrics.getBytes() + "\n");
 		result.append("entropy pool size             : " + random.getEntropyBytes() + " bytes\n");
 		result.append("entropy updates from weather  : " + random.getEntropyUpdates() + "\n");
+		result.append(String.format("reseeds                       : %d, %.3f ms average%n", metrics.getReseeds(),
+				metrics.getReseeds() == 0 ? 0 : metrics.getReseedNanos() / 1e6 / metrics.getReseeds()));
 		
 		result.append("\nCalls on random generators:\n");
-		int[] calls = random.getSourceCounts();
+		long[] calls = metrics.getSourceDraws();
+		double[] nanos = metrics.getSourceNanosPerDraw();
+		String[] sources = metrics.getSources();
 		for (int i = 0; i < calls.length; i++) {
-			result.append(String.format("instance %5d%32s%9d%n", i, random.getClasses()[i], calls[i]));
+			result.append(String.format("instance %5d%32s%12d%9.1f ns%n", i, sources[i], calls[i], nanos[i]));
 		}
 		result.append("\n");
 		
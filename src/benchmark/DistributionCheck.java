@@ -0,0 +1,158 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * quick check of the output distribution of the generators. For every generator it
+ * draws doubles and counts them in deciles, and draws ints and longs and counts the
+ * ones in each bit position. A chi-square of the deciles, or a bit count, more than
+ * LIMIT standard deviations from what a uniform generator gives is reported as a
+ * failure. This catches the gross faults a fast path can introduce, such as a few
+ * high bits that copy the sign, not the subtle ones a full test suite looks for.
+ *
+ * usage: DistributionCheck [-n samples] [generator ...]
+ *
+ * The exit status is the number of generators that failed.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class DistributionCheck {
+
+	/* generators checked when none are given on the command line */
+	final static String[] defaultGenerators = {
+			"prng.MersenneTwister",
+			"prng.XORShift",
+			"prng.Xoroshiro128",
+			"prng.Random64",
+			"prng.MultiplyWithCarry",
+			"prng.BlumBlumShub",
+			"prng.Polynomial",
+			"prng.DigestRandom",
+			"prng.CBRNG",
+			"prng.MultiRandom",
+			"prng.PrefetchRandom"
+	};
+
+	final static int DEFAULT_SAMPLES = 1 << 20;
+	final static int DECILES = 10;
+	/* standard deviations from the expected value that count as a failure */
+	final static double LIMIT = 6;
+
+	/**
+	 * main
+	 *
+	 * @param args [-n samples] [generator class names]
+	 * @throws Exception if a generator can not be created
+	 */
+	public static void main(String[] args) throws Exception {
+
+		int samples = DEFAULT_SAMPLES;
+		final List<String> names = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n")) {
+				samples = Integer.parseInt(args[++i]);
+			} else {
+				names.add(args[i].contains(".") ? args[i] : "prng." + args[i]);
+			}
+		}
+		if (names.isEmpty()) names.addAll(Arrays.asList(defaultGenerators));
+
+		int failed = 0;
+		for (final String name : names) {
+			final List<String> failures = check(RandomBenchmark.create(name), samples);
+			System.out.println(String.format("%-28s%s", name.substring(name.lastIndexOf('.') + 1),
+					failures.isEmpty() ? "ok" : String.join(", ", failures)));
+			if (!failures.isEmpty()) failed++;
+		}
+
+		// generators may have left threads running
+		System.exit(failed);
+	}
+
+	/**
+	 * check one generator
+	 *
+	 * @param random generator
+	 * @param samples values drawn for each check
+	 * @return descriptions of the failed checks, empty if all passed
+	 */
+	static List<String> check(final RandomGenerator random, final int samples) {
+
+		final List<String> failures = new ArrayList<String>();
+
+		final long[] deciles = new long[DECILES];
+		for (int i = 0; i < samples; i++) {
+			deciles[(int) (random.nextDouble() * DECILES)]++;
+		}
+		final double expected = (double) samples / DECILES;
+		double chi = 0;
+		for (final long count : deciles) {
+			chi += (count - expected) * (count - expected) / expected;
+		}
+		final int freedom = DECILES - 1;
+		if (chi > freedom + LIMIT * Math.sqrt(2.0 * freedom)) {
+			failures.add("nextDouble deciles " + Arrays.toString(deciles));
+		}
+
+		final long[] intBits = new long[Integer.SIZE];
+		for (int i = 0; i < samples; i++) {
+			final int value = random.nextInt();
+			for (int bit = 0; bit < intBits.length; bit++) {
+				intBits[bit] += (value >>> bit) & 1;
+			}
+		}
+		checkBits("nextInt", intBits, samples, failures);
+
+		final long[] longBits = new long[Long.SIZE];
+		for (int i = 0; i < samples; i++) {
+			final long value = random.nextLong();
+			for (int bit = 0; bit < longBits.length; bit++) {
+				longBits[bit] += (value >>> bit) & 1;
+			}
+		}
+		checkBits("nextLong", longBits, samples, failures);
+
+		return failures;
+	}
+
+	/**
+	 * check that each bit is set in about half of the samples
+	 *
+	 * @param operation name of the operation
+	 * @param ones count of ones in each bit position
+	 * @param samples number of samples
+	 * @param failures receives a description of each bad bit
+	 */
+	private static void checkBits(final String operation, final long[] ones, final int samples,
+			final List<String> failures) {
+
+		final double limit = LIMIT * Math.sqrt(samples) / 2;
+		for (int bit = 0; bit < ones.length; bit++) {
+			if (Math.abs(ones[bit] - samples / 2.0) > limit) {
+				failures.add(String.format("%s bit %d set %.4f", operation, bit, (double) ones[bit] / samples));
+			}
+		}
+	}
+}
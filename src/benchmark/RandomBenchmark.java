@@ -0,0 +1,420 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import prng.MultiRandom;
+
+/**
+ * micro benchmark for the random number generators.  For every generator it measures
+ * nextInt() (which is next(32)), nextLong(), nextDouble(), nextInt(bound) and nextBytes
+ * for several array sizes, and reports the time per operation and the bytes allocated
+ * per operation, similar to what the JMH gc profiler reports.
+ *
+ * SplittableRandom and SecureRandom are included as baselines.
+ *
+ * With -r it instead measures the latency of single nextInt calls on MultiRandom based
+ * generators, first undisturbed and then while another thread keeps reseeding the
+ * generator, and reports the percentiles, so that reseeding stalls show up in the tail.
+ *
+ * Each generator is measured in its own forked JVM, so the JIT only ever sees one
+ * generator class at the call sites and a result does not depend on which generators
+ * ran before it. Operations run in batches sized during the warm up to take a fixed
+ * part of the measuring time, so the clock is read rarely and a measurement overshoots
+ * its time by at most one batch. Every result is folded into a checksum that is printed
+ * with each row, so the JIT can not drop any of the measured work.
+ *
+ * usage: RandomBenchmark [-t millis] [-r] [generator ...]
+ *
+ *   copyright 2019 Matthew Clark
+
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class RandomBenchmark {
+
+	/* generators measured when none are given on the command line */
+	final static String[] defaultGenerators = {
+			"prng.MersenneTwister",
+			"prng.XORShift",
+			"prng.Xoroshiro128",
+			"prng.Random64",
+			"prng.MultiplyWithCarry",
+			"prng.BlumBlumShub",
+			"prng.Polynomial",
+			"prng.DigestRandom",
+			"prng.CBRNG",
+			"prng.MultiRandom",
+			"prng.PrefetchRandom",
+			"trueRandom.TrueRandom",
+			"java.util.SplittableRandom",
+			"java.security.SecureRandom"
+	};
+
+	/* sizes of the arrays used for nextBytes */
+	final static int[] byteSizes = { 1, 64, 4096, 1024 * 1024 };
+
+	final static int BOUND = 1000000;    // bound for nextInt(bound), as used by UI
+	final static int WARMUP_ROUNDS = 3;  // rounds run before measuring
+	final static int BATCHES = 20;       // batches in the measuring time of an operation
+	
+	/* option that runs one generator in this JVM, used for the forked JVMs */
+	final static String FORKED = "-forked";
+
+	/* default measuring time for each operation in milliseconds */
+	final static long DEFAULT_TIME = 1000;
+
+	final static int LATENCY_SAMPLES = 1 << 22;  // most latencies recorded per run
+	final static int RESEED_SIZE = 2048;         // seed bytes, as used by SeedGenerator
+	final static long RESEED_INTERVAL = 10;      // milliseconds between reseeds
+
+	/* every result is folded into this, and it is printed with each row, so the JIT cannot remove the work */
+	static volatile long sink;
+
+	private final long measureNanos;
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * one benchmarked operation.
+	 */
+	interface Operation {
+		/**
+		 * run the operation a number of times
+		 * @param random generator to use
+		 * @param count number of operations
+		 * @return value to prevent dead code elimination
+		 */
+		long run(RandomGenerator random, long count);
+	}
+
+	/**
+	 * main
+	 *
+	 * @param args [-t millis] [-r] [generator class names]
+	 * @throws Exception if a generator can not be created
+	 */
+	public static void main(String[] args) throws Exception {
+
+		long time = DEFAULT_TIME;
+		boolean reseed = false;
+		boolean forked = false;
+		final List<String> names = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-t")) {
+				time = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-r")) {
+				reseed = true;
+			} else if (args[i].equals(FORKED)) {
+				forked = true;
+			} else {
+				names.add(args[i].contains(".") ? args[i] : "prng." + args[i]);
+			}
+		}
+		if (names.isEmpty()) names.addAll(Arrays.asList(defaultGenerators));
+
+		if (forked) {
+			final RandomBenchmark benchmark = new RandomBenchmark(time);
+			final RandomGenerator random = create(names.get(0));
+			if (!reseed) {
+				benchmark.measure(names.get(0), random);
+			} else if (random instanceof MultiRandom) {
+				benchmark.reseedLatency(names.get(0), (MultiRandom) random);
+			}
+			
+			// generators may have left threads running
+			System.exit(0);
+		}
+
+		if (reseed) {
+			System.out.println(String.format("%-28s%-18s%10s%10s%10s%10s%10s%10s",
+					"generator", "nextInt", "p50 ns", "p99 ns", "p99.9 ns", "max ns", "reseeds", "checksum"));
+		} else {
+			System.out.println(String.format("%-28s%-18s%14s%14s%10s", "generator", "operation", "ns/op", "B/op", "checksum"));
+		}
+
+		for (final String name : names) {
+			fork(name, time, reseed);
+		}
+	}
+
+	/**
+	 * measure one generator in a new JVM with the same class path, which prints its
+	 * results to the same output
+	 *
+	 * @param name generator class name
+	 * @param time time to measure each operation in milliseconds
+	 * @param reseed true to measure reseed latency
+	 * @throws Exception if the JVM can not be started or is interrupted
+	 */
+	static void fork(final String name, final long time, final boolean reseed) throws Exception {
+
+		final List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RandomBenchmark.class.getName());
+		command.add(FORKED);
+		command.add("-t");
+		command.add(String.valueOf(time));
+		if (reseed) command.add("-r");
+		command.add(name);
+
+		final int status = new ProcessBuilder(command).inheritIO().start().waitFor();
+		if (status != 0) System.err.println(name + " failed with status " + status);
+	}
+
+	/**
+	 * create benchmark
+	 * @param time time to measure each operation in milliseconds
+	 */
+	RandomBenchmark(final long time) {
+		measureNanos = time * 1000000L;
+	}
+
+	/**
+	 * create a generator using its no argument constructor.  Several of the generators
+	 * have package private constructors, so the constructor is made accessible.
+	 *
+	 * @param name class name
+	 * @return new generator
+	 * @throws Exception if the generator can not be created
+	 */
+	static RandomGenerator create(final String name) throws Exception {
+
+		final Constructor<?> constructor = Class.forName(name).getDeclaredConstructor();
+		constructor.setAccessible(true);
+		return (RandomGenerator) constructor.newInstance();
+	}
+
+	/**
+	 * measure all operations for one generator
+	 * @param name generator name to print
+	 * @param random generator
+	 */
+	void measure(final String name, final RandomGenerator random) {
+
+		final String shortName = name.substring(name.lastIndexOf('.') + 1);
+
+		report(shortName, "next(32)", random, new Operation() {
+			public long run(RandomGenerator r, long count) {
+				long result = 0;
+				for (long i = 0; i < count; i++) result += r.nextInt();
+				return result;
+			}
+		});
+
+		report(shortName, "nextLong", random, new Operation() {
+			public long run(RandomGenerator r, long count) {
+				long result = 0;
+				for (long i = 0; i < count; i++) result += r.nextLong();
+				return result;
+			}
+		});
+
+		report(shortName, "nextDouble", random, new Operation() {
+			public long run(RandomGenerator r, long count) {
+				long result = 0;
+				for (long i = 0; i < count; i++) result += Double.doubleToRawLongBits(r.nextDouble());
+				return result;
+			}
+		});
+
+		report(shortName, "nextInt(" + BOUND + ")", random, new Operation() {
+			public long run(RandomGenerator r, long count) {
+				long result = 0;
+				for (long i = 0; i < count; i++) result += r.nextInt(BOUND);
+				return result;
+			}
+		});
+
+		for (final int size : byteSizes) {
+			final byte[] bytes = new byte[size];
+			report(shortName, "nextBytes(" + size + ")", random, new Operation() {
+				public long run(RandomGenerator r, long count) {
+					long result = 0;
+					for (long i = 0; i < count; i++) {
+						r.nextBytes(bytes);
+						// a different byte each time, the sizes are powers of two
+						result += bytes[(int) i & (size - 1)];
+					}
+					return result;
+				}
+			});
+		}
+	}
+
+	/**
+	 * run an operation until the measuring time is used, and print the time and allocation
+	 * per operation.  The warm up doubles the batch until one batch takes a BATCHES part of
+	 * the measuring time, and then whole batches of that size are measured.
+	 *
+	 * @param name generator name
+	 * @param operation name of operation
+	 * @param random generator
+	 * @param op operation to measure
+	 */
+	void report(final String name, final String operation, final RandomGenerator random, final Operation op) {
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink += op.run(random, 1000);
+		}
+
+		long batch = 1;
+		for (;;) {
+			final long begin = System.nanoTime();
+			sink += op.run(random, batch);
+			if (System.nanoTime() - begin >= measureNanos / BATCHES) break;
+			batch *= 2;
+		}
+
+		final long threadId = Thread.currentThread().getId();
+		final long startBytes = allocatedBytes(threadId);
+		final long start = System.nanoTime();
+
+		long count = 0;
+		long elapsed = 0;
+
+		while (elapsed < measureNanos) {
+			sink += op.run(random, batch);
+			count += batch;
+			elapsed = System.nanoTime() - start;
+		}
+
+		final long bytes = allocatedBytes(threadId) - startBytes;
+
+		System.out.println(String.format("%-28s%-18s%14.2f%14.2f%10s",
+				name, operation, (double) elapsed / count, bytes < 0 ? Double.NaN : (double) bytes / count, checksum()));
+	}
+
+	/**
+	 * measure the latency of nextInt without and with a thread reseeding the generator
+	 *
+	 * @param name generator name
+	 * @param random generator
+	 * @throws InterruptedException if interrupted
+	 */
+	void reseedLatency(final String name, final MultiRandom random) throws InterruptedException {
+
+		final String shortName = name.substring(name.lastIndexOf('.') + 1);
+		final long[] latencies = new long[LATENCY_SAMPLES];
+
+		// warm up
+		latencies(random, latencies);
+
+		reportLatency(shortName, "quiet", latencies, latencies(random, latencies), 0);
+
+		final long[] reseeds = new long[1];
+		final Thread reseeder = new Thread(() -> {
+			final SplittableRandom seeds = new SplittableRandom();
+			final byte[] seed = new byte[RESEED_SIZE];
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					seeds.nextBytes(seed);
+					random.setSeed(seed);
+					reseeds[0]++;
+					Thread.sleep(RESEED_INTERVAL);
+				}
+			} catch (InterruptedException e) {
+				// done
+			}
+		}, "reseeder");
+
+		reseeder.start();
+		final int count = latencies(random, latencies);
+		reseeder.interrupt();
+		reseeder.join();
+
+		reportLatency(shortName, "reseeding", latencies, count, reseeds[0]);
+	}
+
+	/**
+	 * time single calls of nextInt for the measuring time
+	 *
+	 * @param random generator
+	 * @param latencies receives the time of each call in nanoseconds
+	 * @return number of calls timed
+	 */
+	private int latencies(final RandomGenerator random, final long[] latencies) {
+
+		final long end = System.nanoTime() + measureNanos;
+		int count = 0;
+		long result = 0;
+
+		while (count < latencies.length) {
+			final long start = System.nanoTime();
+			result += random.nextInt();
+			final long stop = System.nanoTime();
+			latencies[count++] = stop - start;
+			if (stop > end) break;
+		}
+
+		sink += result;
+		return count;
+	}
+
+	/**
+	 * print latency percentiles
+	 *
+	 * @param name generator name
+	 * @param condition what ran alongside
+	 * @param latencies call times, sorted by this method
+	 * @param count number of call times
+	 * @param reseeds number of reseeds during the run
+	 */
+	private static void reportLatency(final String name, final String condition, final long[] latencies,
+			final int count, final long reseeds) {
+
+		Arrays.sort(latencies, 0, count);
+
+		System.out.println(String.format("%-28s%-18s%10d%10d%10d%10d%10d%10s", name, condition,
+				latencies[(int) (count * 0.5)], latencies[(int) (count * 0.99)],
+				latencies[(int) (count * 0.999)], latencies[count - 1], reseeds, checksum()));
+	}
+
+	/**
+	 * the folded results so far, printed so that they are used
+	 *
+	 * @return 32 bits of the sink in hex
+	 */
+	private static String checksum() {
+		final long value = sink;
+		return String.format("%08x", (int) (value ^ value >>> 32));
+	}
+
+	/**
+	 * bytes allocated by a thread, if the JVM supports measuring it.
+	 *
+	 * @param threadId thread to measure
+	 * @return allocated bytes, or a negative number if not supported
+	 */
+	private long allocatedBytes(final long threadId) {
+
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId);
+		}
+		return -1;
+	}
+}
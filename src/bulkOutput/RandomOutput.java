@@ -0,0 +1,403 @@
+package bulkOutput;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import prng.ExtendedRandom;
+
+/**
+ * writes large amounts of random data, for example as input for PractRand or dieharder, or
+ * for test files. Several threads each fill large direct buffers from their own generator,
+ * split from the one given, and the buffers are written to
+ * <ul>
+ * <li>a file, with positional writes so the threads do not wait for each other,</li>
+ * <li>a memory mapped file, filled in place, or</li>
+ * <li>a channel such as standard output, in order, by a single writer.</li>
+ * </ul>
+ *
+ * usage: RandomOutput [-g generator] [-t threads] [-b buffer KB] [-n bytes] [-m] [-o file]
+ *
+ * The size may end in K, M or G. Without -o the output goes to standard output, without
+ * end unless -n is given, so it can be piped into a test suite. The rate is reported on
+ * standard error.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class RandomOutput {
+
+	final static String DEFAULT_GENERATOR = "prng.MultiRandom";
+	final static int DEFAULT_BUFFER = 1 << 22;     // bytes in each buffer
+	final static long DEFAULT_SIZE = 1L << 30;     // bytes written to a file
+	final static long MAP_REGION = 1L << 30;       // bytes mapped at a time
+	final static int BUFFERS_PER_THREAD = 2;       // buffers in flight for each thread in order
+
+	/* passed to the writer in place of a buffer when a thread filling buffers fails */
+	private final static ByteBuffer FAILED = ByteBuffer.allocate(0);
+
+	private final ExtendedRandom random;
+	private final int threads;
+	private final int bufferSize;
+
+	/**
+	 * one part of the work, done by each thread with its own generator
+	 */
+	interface Worker {
+		/**
+		 * do the work
+		 * @param index thread number
+		 * @param generator generator of this thread
+		 * @throws IOException if writing fails
+		 * @throws InterruptedException if interrupted
+		 */
+		void run(int index, ExtendedRandom generator) throws IOException, InterruptedException;
+	}
+
+	/**
+	 * main
+	 *
+	 * @param args [-g generator] [-t threads] [-b buffer KB] [-n bytes] [-m] [-o file]
+	 * @throws Exception if the generator can not be created or the output fails
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String generator = DEFAULT_GENERATOR;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int bufferSize = DEFAULT_BUFFER;
+		long size = -1;
+		boolean mapped = false;
+		Path file = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-g":
+				generator = args[++i].contains(".") ? args[i] : "prng." + args[i];
+				break;
+			case "-t":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-b":
+				bufferSize = Integer.parseInt(args[++i]) * 1024;
+				break;
+			case "-n":
+				size = parseSize(args[++i]);
+				break;
+			case "-m":
+				mapped = true;
+				break;
+			case "-o":
+				file = Paths.get(args[++i]);
+				break;
+			default:
+				System.err.println("usage: RandomOutput [-g generator] [-t threads] [-b buffer KB] [-n bytes] [-m] [-o file]");
+				System.exit(1);
+			}
+		}
+
+		final RandomOutput output = new RandomOutput(create(generator), threads, bufferSize);
+		final long start = System.nanoTime();
+		long written;
+
+		if (file == null) {
+			written = output.write(new FileOutputStream(FileDescriptor.out).getChannel(), size < 0 ? Long.MAX_VALUE : size);
+		} else if (mapped) {
+			written = output.map(file, size < 0 ? DEFAULT_SIZE : size);
+		} else {
+			written = output.write(file, size < 0 ? DEFAULT_SIZE : size);
+		}
+
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.println(String.format("%d bytes in %.3f s, %.3f GB/s", written, seconds, written / seconds / 1e9));
+
+		// generators may have left threads running
+		System.exit(0);
+	}
+
+	/**
+	 * parse a size with an optional K, M or G suffix
+	 *
+	 * @param size size text
+	 * @return bytes
+	 */
+	static long parseSize(final String size) {
+
+		final String units = "KMG";
+		final int unit = units.indexOf(Character.toUpperCase(size.charAt(size.length() - 1)));
+		if (unit < 0) return Long.parseLong(size);
+		return Long.parseLong(size.substring(0, size.length() - 1)) << (10 * (unit + 1));
+	}
+
+	/**
+	 * create a generator using its no argument constructor, which may be package private.
+	 *
+	 * @param name class name
+	 * @return new generator
+	 * @throws Exception if the generator can not be created
+	 */
+	static ExtendedRandom create(final String name) throws Exception {
+
+		final Constructor<?> constructor = Class.forName(name).getDeclaredConstructor();
+		constructor.setAccessible(true);
+		return (ExtendedRandom) constructor.newInstance();
+	}
+
+	/**
+	 * create a writer
+	 *
+	 * @param random generator, which is split for each thread
+	 * @param threads number of threads filling buffers
+	 * @param bufferSize bytes in each buffer
+	 */
+	public RandomOutput(final ExtendedRandom random, final int threads, final int bufferSize) {
+
+		if (threads < 1 || bufferSize < 1) throw new IllegalArgumentException("threads and buffer size must be positive");
+		this.random = random;
+		this.threads = threads;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * write random bytes to a file with positional writes, replacing its contents
+	 *
+	 * @param path file to write
+	 * @param size bytes to write
+	 * @return bytes written
+	 * @throws IOException if writing fails
+	 */
+	public long write(final Path path, final long size) throws IOException {
+
+		final long chunks = chunks(size);
+		final AtomicLong next = new AtomicLong();
+
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			parallel(generators(), (index, generator) -> {
+
+				final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+
+				for (long chunk; (chunk = next.getAndIncrement()) < chunks;) {
+					long position = chunk * bufferSize;
+					buffer.clear().limit((int) Math.min(bufferSize, size - position));
+					generator.fill(buffer);
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						position += channel.write(buffer, position);
+					}
+				}
+			});
+		}
+		return size;
+	}
+
+	/**
+	 * fill a memory mapped file with random bytes, replacing its contents. The file is 
+	 * mapped a region at a time, and the threads fill parts of each region in place.
+	 *
+	 * @param path file to write
+	 * @param size bytes to write
+	 * @return bytes written
+	 * @throws IOException if writing fails
+	 */
+	public long map(final Path path, final long size) throws IOException {
+
+		final ExtendedRandom[] generators = generators();
+
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			for (long region = 0; region < size; region += MAP_REGION) {
+
+				final int length = (int) Math.min(MAP_REGION, size - region);
+				final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, region, length);
+				final long chunks = chunks(length);
+				final AtomicLong next = new AtomicLong();
+
+				parallel(generators, (index, generator) -> {
+					for (long chunk; (chunk = next.getAndIncrement()) < chunks;) {
+						final int offset = (int) (chunk * bufferSize);
+						generator.fill(mapped.slice(offset, Math.min(bufferSize, length - offset)));
+					}
+				});
+				mapped.force();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * write random bytes to a channel in order. Each thread fills every threads'th buffer,
+	 * and a single writer takes them in turn. Any error writing the channel ends the 
+	 * output, as that is how the reader of a pipe going away shows up, so the count
+	 * returned may be less than the size.
+	 *
+	 * @param channel channel to write to
+	 * @param size bytes to write, or Long.MAX_VALUE to write until the channel fails
+	 * @return bytes written
+	 * @throws IOException if a thread filling buffers fails
+	 */
+	public long write(final WritableByteChannel channel, final long size) throws IOException {
+
+		final long chunks = chunks(size);
+		final List<BlockingQueue<ByteBuffer>> free = new ArrayList<BlockingQueue<ByteBuffer>>(threads);
+		final List<BlockingQueue<ByteBuffer>> full = new ArrayList<BlockingQueue<ByteBuffer>>(threads);
+
+		for (int i = 0; i < threads; i++) {
+			free.add(new ArrayBlockingQueue<ByteBuffer>(BUFFERS_PER_THREAD));
+			full.add(new ArrayBlockingQueue<ByteBuffer>(BUFFERS_PER_THREAD));
+			for (int j = 0; j < BUFFERS_PER_THREAD; j++) {
+				free.get(i).add(ByteBuffer.allocateDirect(bufferSize));
+			}
+		}
+
+		final ExtendedRandom[] generators = generators();
+		final Thread[] producers = new Thread[threads];
+		final Throwable[] failures = new Throwable[threads];
+
+		for (int i = 0; i < threads; i++) {
+			final int index = i;
+			producers[i] = new Thread(() -> {
+				try {
+					for (long chunk = index; chunk < chunks; chunk += threads) {
+						final ByteBuffer buffer = free.get(index).take();
+						final long position = chunk * bufferSize;
+						buffer.clear().limit((int) Math.min(bufferSize, size - position));
+						generators[index].fill(buffer);
+						buffer.flip();
+						full.get(index).put(buffer);
+					}
+				} catch (InterruptedException e) {
+					// stopped by the writer
+				} catch (RuntimeException | Error e) {
+					// the thread holds one of its buffers, so there is room in the queue
+					failures[index] = e;
+					full.get(index).add(FAILED);
+				}
+			}, "random output " + i);
+			producers[i].setDaemon(true);
+			producers[i].start();
+		}
+
+		long written = 0;
+		try {
+			for (long chunk = 0; chunk < chunks; chunk++) {
+				final int index = (int) (chunk % threads);
+				final ByteBuffer buffer = full.get(index).take();
+				if (buffer == FAILED) throw new IOException("random output thread failed", failures[index]);
+
+				try {
+					while (buffer.hasRemaining()) {
+						written += channel.write(buffer);
+					}
+				} catch (IOException e) {
+					// the reader went away, or the output failed: either way the output ends
+					break;
+				}
+				free.get(index).put(buffer);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for (final Thread producer : producers) {
+				producer.interrupt();
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * number of buffers for a size
+	 *
+	 * @param size bytes
+	 * @return buffers, the last may be partly used
+	 */
+	private long chunks(final long size) {
+		return size / bufferSize + (size % bufferSize == 0 ? 0 : 1);
+	}
+
+	/**
+	 * an independent generator for each thread
+	 *
+	 * @return generators
+	 */
+	private ExtendedRandom[] generators() {
+
+		final ExtendedRandom[] generators = new ExtendedRandom[threads];
+		for (int i = 0; i < threads; i++) {
+			generators[i] = random.split();
+		}
+		return generators;
+	}
+
+	/**
+	 * run a worker on each generator in its own thread, and wait for all of them
+	 *
+	 * @param generators generator for each thread
+	 * @param worker work to do
+	 * @throws IOException if a worker failed
+	 */
+	private void parallel(final ExtendedRandom[] generators, final Worker worker) throws IOException {
+
+		final Thread[] workers = new Thread[generators.length];
+		final Exception[] failure = new Exception[1];
+
+		for (int i = 0; i < generators.length; i++) {
+			final int index = i;
+			workers[i] = new Thread(() -> {
+				try {
+					worker.run(index, generators[index]);
+				} catch (Exception e) {
+					synchronized (failure) {
+						if (failure[0] == null) failure[0] = e;
+					}
+				}
+			}, "random output " + i);
+			workers[i].start();
+		}
+
+		try {
+			for (final Thread thread : workers) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		}
+
+		synchronized (failure) {
+			if (failure[0] instanceof IOException) throw (IOException) failure[0];
+			if (failure[0] != null) throw new IOException(failure[0]);
+		}
+	}
+}
@@ -0,0 +1,420 @@
+package internetEntropy;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import prng.MultiRandom;
+
+/**
+ * one seed generator for the whole process. Generators register with the hub, and are
+ * seeded from the first gather cycle with their own seed derived from the result,
+ * H(master || id || cycle), so no two generators get the same seed and the internet
+ * sources are fetched once per cycle however many generators there are.
+ * 
+ * After that, reseeding follows Fortuna. Each generator has a FortunaAccumulator; the
+ * gather cycles and a frequent stir of cheap local entropy add events to its pools, and
+ * the generator absorbs a seed from the pools when its ReseedPolicy says so, based on how
+ * many numbers it has drawn (getCalls) and the time since its last reseed. Each event is
+ * one sample, no bigger than it, and goes into one pool at a time, so pool 0 has a sample
+ * from each local source only every 32 stirs. Idle generators are not reseeded, and when none has drawn
+ * anything since the last cycle the cycle does not gather at all.
+ *
+ * The hub runs on daemon threads, and stops its cycles when the last generator is closed.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public final class EntropyHub {
+
+	final static long INTERVAL = 1000 * 60 * 5; // gather interval in milliseconds
+	final static long STIR_INTERVAL = 1000; // interval for stirring local entropy in milliseconds
+	final static long CHECK_INTERVAL = 100; // interval for checking the reseed policies in milliseconds
+	final static int SEED_SIZE = 2048; // seed size for each generator
+	final static boolean DEBUG = false;
+
+	/* accumulator source numbers of the events */
+	final static int GATHER_SOURCE = 0;
+	final static int PROCESS_SOURCE = 1;
+	final static int DEVICE_SOURCE = 2;
+
+	/* bytes of each gather cycle added to the pools as one event */
+	final static int GATHER_EVENT_SIZE = 64;
+
+	/* digest used to derive the seeds and events */
+	private final static String DERIVE_DIGEST = "SHA-512";
+
+	private static class Holder {
+		static final EntropyHub hub = new EntropyHub();
+	}
+
+	private final ScheduledThreadPoolExecutor scheduler;
+	private final SeedGenerator seeder = new SeedGenerator();
+	private final Map<Long, Registration> registrations = new ConcurrentHashMap<Long, Registration>();
+	private final AtomicLong ids = new AtomicLong();
+
+	private final ProcessStateSampler process = new ProcessStateSampler();
+	private final URandomSource device = new URandomSource();
+
+	/* result of the last gather cycle, or null before the first */
+	private volatile byte[] master = null;
+	private volatile long cycle = 0;
+
+	/* stirs run, only changed by the stir task */
+	private long stirs = 0;
+
+	private ScheduledFuture<?> update = null;
+	private ScheduledFuture<?> stir = null;
+	private ScheduledFuture<?> check = null;
+
+	/**
+	 * the hub for this process
+	 *
+	 * @return hub
+	 */
+	public static EntropyHub getInstance() {
+		return Holder.hub;
+	}
+
+	private EntropyHub() {
+
+		// two threads, so that stirring and reseeding do not wait for a slow gather
+		scheduler = new ScheduledThreadPoolExecutor(2, task -> {
+			final Thread thread = new Thread(task, "entropy hub");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.setKeepAliveTime(1, TimeUnit.MINUTES);
+		scheduler.allowCoreThreadTimeOut(true);
+		scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * register a generator with the default reseed policy
+	 *
+	 * @param random generator to seed
+	 * @return registration, close it to stop seeding the generator
+	 */
+	public Registration register(final MultiRandom random) {
+		return register(random, ReseedPolicy.DEFAULT);
+	}
+
+	/**
+	 * register a generator. It is seeded from the last gather cycle straight away if
+	 * there has been one, or else from the first cycle, and then reseeded according to
+	 * the policy until the registration is closed.
+	 *
+	 * @param random generator to seed
+	 * @param policy when to reseed the generator
+	 * @return registration, close it to stop seeding the generator
+	 */
+	public Registration register(final MultiRandom random, final ReseedPolicy policy) {
+
+		final Registration registration = new Registration(ids.incrementAndGet(), random, policy);
+		registrations.put(registration.id, registration);
+
+		synchronized (this) {
+			if (update == null) {
+				update = scheduler.scheduleWithFixedDelay(this::update, 0, INTERVAL, TimeUnit.MILLISECONDS);
+				stir = scheduler.scheduleWithFixedDelay(this::stir, STIR_INTERVAL, STIR_INTERVAL, TimeUnit.MILLISECONDS);
+				check = scheduler.scheduleWithFixedDelay(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+			} else if (master != null) {
+				scheduler.execute(() -> registration.gathered(master, cycle));
+			}
+		}
+		return registration;
+	}
+
+	/**
+	 * remove a registration, and stop the cycles when none are left
+	 *
+	 * @param registration registration to remove
+	 */
+	private void remove(final Registration registration) {
+
+		registrations.remove(registration.id);
+
+		synchronized (this) {
+			if (registrations.isEmpty() && update != null) {
+				update.cancel(false);
+				stir.cancel(false);
+				check.cancel(false);
+				update = null;
+				stir = null;
+				check = null;
+			}
+		}
+	}
+
+	/**
+	 * run a task periodically on the hub's threads, so that periodic work elsewhere
+	 * does not need a thread of its own
+	 *
+	 * @param task task to run
+	 * @param period time between the end of one run and the start of the next
+	 * @param unit unit of the period
+	 * @return future of the task, cancel it to stop the task
+	 */
+	public ScheduledFuture<?> schedule(final Runnable task, final long period, final TimeUnit unit) {
+		return scheduler.scheduleWithFixedDelay(task, period, period, unit);
+	}
+
+	/**
+	 * number of registered generators
+	 *
+	 * @return count
+	 */
+	public int size() {
+		return registrations.size();
+	}
+
+	/**
+	 * number of gather cycles run
+	 *
+	 * @return cycles
+	 */
+	public long getCycles() {
+		return cycle;
+	}
+
+	/**
+	 * gather entropy once and give every registered generator its share, unless all of
+	 * them have been idle since the last cycle.
+	 */
+	private void update() {
+
+		try {
+			if (master != null) {
+				boolean idle = true;
+				for (final Registration registration : registrations.values()) {
+					idle &= !registration.drawnSinceCycle();
+				}
+				if (idle) return;
+			}
+
+			final byte[] gathered = seeder.generateSeed(SEED_SIZE);
+			final long next = cycle + 1;
+			master = gathered;
+			cycle = next;
+
+			for (final Registration registration : registrations.values()) {
+				registration.gathered(gathered, next);
+			}
+			if (DEBUG) System.out.println("cycle " + next + " for " + registrations.size() + " generators");
+
+		} catch (Exception ex) {
+			System.err.println("error running thread " + ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * add a little local entropy to the pools of every registered generator: a sample of
+	 * the process state and a read of the operating system random device. Each source is
+	 * sampled once per stir, however many generators there are, and each generator gets
+	 * its own event derived from the sample, H(sample || id || stir), no longer than the
+	 * sample, as one event to the next pool for the source.
+	 */
+	private void stir() {
+
+		try {
+			if (registrations.isEmpty()) return;
+
+			final byte[] processSample = process.getEntropy();
+			final byte[] deviceSample = device.getEntropy();
+			final long stir = ++stirs;
+
+			for (final Registration registration : registrations.values()) {
+				registration.accumulator.addEvent(PROCESS_SOURCE,
+						derive(processSample, registration.id, stir, processSample.length));
+				registration.accumulator.addEvent(DEVICE_SOURCE,
+						derive(deviceSample, registration.id, stir, deviceSample.length));
+			}
+		} catch (Exception ex) {
+			System.err.println("error stirring entropy " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * reseed the generators whose policy says so
+	 */
+	private void check() {
+
+		final long now = System.nanoTime();
+		for (final Registration registration : registrations.values()) {
+			try {
+				registration.check(now);
+			} catch (Exception ex) {
+				System.err.println("error reseeding " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * derive the seed or an event of one generator, H(master || id || cycle || block) for
+	 * as many blocks as needed.
+	 *
+	 * @param master gathered entropy, or a stir sample
+	 * @param id registration id
+	 * @param cycle gather cycle, or stir number
+	 * @param size bytes to derive
+	 * @return seed
+	 */
+	static byte[] derive(final byte[] master, final long id, final long cycle, final int size) {
+
+		try {
+			final MessageDigest digest = MessageDigest.getInstance(DERIVE_DIGEST);
+			final byte[] result = new byte[size];
+			final ByteBuffer suffix = ByteBuffer.allocate(3 * Long.BYTES);
+
+			for (int offset = 0, block = 0; offset < result.length; block++) {
+				digest.update(master);
+				suffix.clear();
+				suffix.putLong(id).putLong(cycle).putLong(block).flip();
+				digest.update(suffix);
+				final byte[] part = digest.digest();
+				final int count = Math.min(part.length, result.length - offset);
+				System.arraycopy(part, 0, result, offset, count);
+				offset += count;
+			}
+			return result;
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * a generator registered with the hub, with its pools and reseed policy.
+	 */
+	public final class Registration implements AutoCloseable {
+
+		private final long id;
+		private final MultiRandom random;
+		private final FortunaAccumulator accumulator = new FortunaAccumulator();
+		private volatile ReseedPolicy policy;
+
+		/* set once the generator has had its first full seed */
+		private boolean seeded = false;
+
+		/* draws of the generator at the last reseed and at the last cycle */
+		private long reseedCalls;
+		private long reseedTime;
+		private long cycleCalls;
+
+		private Registration(final long id, final MultiRandom random, final ReseedPolicy policy) {
+			this.id = id;
+			this.random = random;
+			this.policy = policy;
+			reseedCalls = cycleCalls = random.getCalls();
+			reseedTime = System.nanoTime();
+		}
+
+		/**
+		 * use a gather cycle: the first is the full seed of the generator, later ones add
+		 * one event to the next pool.
+		 *
+		 * @param master gathered entropy
+		 * @param cycle gather cycle
+		 */
+		private synchronized void gathered(final byte[] master, final long cycle) {
+
+			if (!registrations.containsKey(id)) return;
+
+			if (seeded) {
+				accumulator.addEvent(GATHER_SOURCE, derive(master, id, cycle, GATHER_EVENT_SIZE));
+			} else {
+				random.reseed(derive(master, id, cycle, SEED_SIZE));
+				seeded = true;
+				reseedTime = System.nanoTime();
+			}
+			cycleCalls = random.getCalls();
+		}
+
+		/**
+		 * whether the generator has drawn numbers since the last gather cycle
+		 *
+		 * @return true if it has, or if it has not been seeded yet
+		 */
+		private synchronized boolean drawnSinceCycle() {
+			return !seeded || random.getCalls() != cycleCalls;
+		}
+
+		/**
+		 * reseed from the pools if the policy says so
+		 *
+		 * @param now current System.nanoTime()
+		 */
+		private synchronized void check(final long now) {
+
+			if (!seeded || !accumulator.isReady()) return;
+
+			final long calls = random.getCalls();
+			final long elapsed = TimeUnit.NANOSECONDS.toMillis(now - reseedTime);
+
+			if (policy.shouldReseed(calls - reseedCalls, elapsed)) {
+				random.absorb(accumulator.reseed());
+				reseedCalls = calls;
+				reseedTime = now;
+				if (DEBUG) System.out.println("reseed " + id + " after " + elapsed + " ms");
+			}
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public ReseedPolicy getPolicy() {
+			return policy;
+		}
+
+		/**
+		 * change when the generator is reseeded
+		 *
+		 * @param policy new policy
+		 */
+		public void setPolicy(final ReseedPolicy policy) {
+			this.policy = policy;
+		}
+
+		/**
+		 * number of times the generator has been reseeded from its pools
+		 *
+		 * @return reseeds
+		 */
+		public long getReseeds() {
+			return accumulator.getReseeds();
+		}
+
+		/**
+		 * stop seeding the generator
+		 */
+		public void close() {
+			remove(this);
+		}
+	}
+}
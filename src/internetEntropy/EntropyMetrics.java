@@ -0,0 +1,194 @@
+package internetEntropy;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * latency of the internet entropy fetches, for each URL. The counters are LongAdders
+ * updated from the threads of the http client as each fetch completes, and are kept
+ * for the life of the process. The single instance is published as the MXBean
+ * internetEntropy:type=EntropyMetrics when it is first used.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public final class EntropyMetrics implements EntropyMetricsMXBean {
+
+	final static String NAME = "internetEntropy:type=EntropyMetrics";
+
+	private static class Holder {
+		static final EntropyMetrics metrics = register(new EntropyMetrics());
+	}
+
+	/* counters of each url */
+	private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<String, Counters>();
+
+	/**
+	 * counters of one url
+	 */
+	static final class Counters {
+
+		final LongAdder fetches = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final AtomicLong maxNanos = new AtomicLong();
+		final LongAdder bytes = new LongAdder();
+	}
+
+	/**
+	 * the metrics of this process
+	 *
+	 * @return metrics
+	 */
+	public static EntropyMetrics getInstance() {
+		return Holder.metrics;
+	}
+
+	private EntropyMetrics() {
+	}
+
+	/**
+	 * publish the metrics. A failure is reported and the metrics are still kept.
+	 *
+	 * @param metrics metrics
+	 * @return metrics
+	 */
+	private static EntropyMetrics register(final EntropyMetrics metrics) {
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					new StandardMBean(metrics, EntropyMetricsMXBean.class, true), new ObjectName(NAME));
+		} catch (JMException e) {
+			System.err.println("could not register entropy metrics: " + e);
+		}
+		return metrics;
+	}
+
+	/**
+	 * record a completed fetch
+	 *
+	 * @param url URL fetched
+	 * @param nanos time from the request to the end of the body or the failure
+	 * @param bytes bytes read
+	 * @param failed true if the fetch failed
+	 */
+	void fetched(final String url, final long nanos, final int bytes, final boolean failed) {
+
+		final Counters count = counters.computeIfAbsent(url, key -> new Counters());
+		count.fetches.increment();
+		if (failed) count.failures.increment();
+		count.nanos.add(nanos);
+		count.maxNanos.accumulateAndGet(nanos, Math::max);
+		count.bytes.add(bytes);
+	}
+
+	@Override
+	public List<Fetches> getFetches() {
+
+		final List<Fetches> result = new ArrayList<Fetches>();
+		counters.forEach((url, count) -> {
+			final long fetches = count.fetches.sum();
+			result.add(new Fetches(url, fetches, count.failures.sum(),
+					fetches == 0 ? 0 : count.nanos.sum() / 1e6 / fetches,
+					count.maxNanos.get() / 1e6, count.bytes.sum()));
+		});
+		return result;
+	}
+
+
+	/**
+	 * counters of one url at one time. The getters make it an open type for JMX.
+	 */
+	public static final class Fetches {
+
+		private final String url;
+		private final long fetches;
+		private final long failures;
+		private final double meanMillis;
+		private final double maxMillis;
+		private final long bytes;
+
+		Fetches(final String url, final long fetches, final long failures, final double meanMillis,
+				final double maxMillis, final long bytes) {
+			this.url = url;
+			this.fetches = fetches;
+			this.failures = failures;
+			this.meanMillis = meanMillis;
+			this.maxMillis = maxMillis;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return URL fetched
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return completed fetches, including failures
+		 */
+		public long getFetches() {
+			return fetches;
+		}
+
+		/**
+		 * @return failed fetches
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return mean fetch time in milliseconds
+		 */
+		public double getMeanMillis() {
+			return meanMillis;
+		}
+
+		/**
+		 * @return longest fetch time in milliseconds
+		 */
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+
+		/**
+		 * @return bytes read
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-70s %6d fetches %4d failed %8.1f ms mean %8.1f ms max", url, fetches,
+					failures, meanMillis, maxMillis);
+		}
+	}
+}
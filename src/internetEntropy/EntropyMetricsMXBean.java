@@ -0,0 +1,36 @@
+package internetEntropy;
+
+import java.util.List;
+
+/**
+ * JMX view of the internet entropy fetch metrics.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public interface EntropyMetricsMXBean {
+
+	/**
+	 * counters of each URL fetched
+	 *
+	 * @return counters
+	 */
+	List<EntropyMetrics.Fetches> getFetches();
+}
@@ -0,0 +1,54 @@
+package internetEntropy;
+
+import java.io.IOException;
+
+/**
+ * a source of entropy for seeding. Sources are listed in EntropySources, which holds the
+ * built in sources and any found by ServiceLoader, and SeedGenerator gathers from all of
+ * them at the same time, giving each one its time budget.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public interface EntropySource {
+
+	/**
+	 * name of the source for reports
+	 *
+	 * @return name
+	 */
+	String getName();
+
+	/**
+	 * time the source is given to deliver its bytes. Sources that take longer are left out
+	 * of the seed.
+	 *
+	 * @return time budget in milliseconds
+	 */
+	long getTimeBudget();
+
+	/**
+	 * get entropy bytes. A source that has nothing on this system returns an empty array.
+	 *
+	 * @return entropy bytes
+	 * @throws IOException on error
+	 */
+	byte[] getEntropy() throws IOException;
+}
@@ -0,0 +1,93 @@
+package internetEntropy;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * registry of entropy sources. It starts with the built in sources, local ones first, and
+ * adds any sources found with ServiceLoader (listed in META-INF/services/internetEntropy.EntropySource).
+ * Sources can also be added and removed at run time, for example to leave out the internet
+ * on hosts without access to it.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public final class EntropySources {
+
+	private static final List<EntropySource> sources = new CopyOnWriteArrayList<EntropySource>();
+
+	static {
+		sources.add(new URandomSource());
+		sources.add(new ProcEntropySource());
+		sources.add(new JitterEntropySource());
+		sources.add(new ProcessStateSampler());
+		sources.add(new SecureRandomSource());
+		sources.add(new InternetEntropySource());
+
+		final FileHashSource files = FileHashSource.fromProperty();
+		if (files != null) sources.add(files);
+
+		for (final EntropySource source : ServiceLoader.load(EntropySource.class)) {
+			sources.add(source);
+		}
+	}
+
+	private EntropySources() {
+	}
+
+	/**
+	 * add a source
+	 *
+	 * @param source source to add
+	 */
+	public static void register(final EntropySource source) {
+		sources.add(source);
+	}
+
+	/**
+	 * remove a source
+	 *
+	 * @param source source to remove
+	 * @return true if the source was registered
+	 */
+	public static boolean remove(final EntropySource source) {
+		return sources.remove(source);
+	}
+
+	/**
+	 * remove all sources of a class
+	 *
+	 * @param sourceClass class of sources to remove
+	 * @return true if any were removed
+	 */
+	public static boolean remove(final Class<? extends EntropySource> sourceClass) {
+		return sources.removeIf(source -> sourceClass.isInstance(source));
+	}
+
+	/**
+	 * the registered sources
+	 *
+	 * @return live list of sources
+	 */
+	public static List<EntropySource> getSources() {
+		return sources;
+	}
+}
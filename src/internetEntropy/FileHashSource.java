@@ -0,0 +1,131 @@
+package internetEntropy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * entropy from the digest of the contents of files that change often, such as logs or
+ * counters. The files are read through a FileChannel into a direct buffer, and files that do
+ * not exist are skipped.  The files can be given with the system property
+ * trueRandom.entropyFiles as a list separated by the path separator.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class FileHashSource implements EntropySource {
+
+	/* system property with the files to digest */
+	final static String FILES_PROPERTY = "trueRandom.entropyFiles";
+
+	/* default digest */
+	private final static String DEFAULT_DIGEST = "SHA-512";
+
+	final static int BUFSIZE = 8192;      // read buffer size
+	final static long MAX_BYTES = 1 << 20; // maximum bytes to read from each file
+	final static long TIME_BUDGET = 200;  // milliseconds
+
+	private final String name;
+	private final Path[] files;
+
+	/**
+	 * digest the given files
+	 *
+	 * @param name name of the source
+	 * @param files files to read
+	 */
+	public FileHashSource(final String name, final Path... files) {
+		this.name = name;
+		this.files = files.clone();
+	}
+
+	/**
+	 * source for the files named in the system property
+	 *
+	 * @return source, or null if the property is not set
+	 */
+	static FileHashSource fromProperty() {
+
+		final String property = System.getProperty(FILES_PROPERTY);
+		if (property == null || property.isEmpty()) return null;
+
+		final List<Path> paths = new ArrayList<Path>();
+		for (final String file : property.split(File.pathSeparator)) {
+			if (!file.isEmpty()) paths.add(Paths.get(file));
+		}
+		return new FileHashSource("files", paths.toArray(new Path[0]));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getTimeBudget() {
+		return TIME_BUDGET;
+	}
+
+	/**
+	 * digest of the files that could be read
+	 *
+	 * @return digest, or an empty array if no files could be read
+	 */
+	public byte[] getEntropy() throws IOException {
+
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DEFAULT_DIGEST);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFSIZE);
+		boolean found = false;
+
+		for (final Path file : files) {
+
+			if (!Files.isReadable(file)) continue;
+
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				// files in /proc report a size of zero, so read until the end
+				long total = 0;
+				while (total < MAX_BYTES && channel.read(buffer) > 0) {
+					total += buffer.position();
+					buffer.flip();
+					digest.update(buffer);
+					buffer.clear();
+				}
+				found = true;
+			} catch (IOException e) {
+				// skip files that can not be read
+			}
+		}
+
+		return found ? digest.digest() : new byte[0];
+	}
+}
@@ -0,0 +1,123 @@
+package internetEntropy;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fortuna entropy accumulator (Ferguson and Schneier, Practical Cryptography).  Entropy
+ * events are spread over 32 pools, each event of a source going to the next pool in turn.
+ * Reseed r uses pool i only if 2^i divides r, so pool 0 is used by every reseed, pool 1 by
+ * every second, and so on.  An attacker who can predict some of the events, or see the
+ * generator output between reseeds, can follow pool 0, but the rarely used pools collect
+ * enough unpredictable events between their uses to recover.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class FortunaAccumulator {
+
+	public final static int POOLS = 32;
+
+	/* bytes in pool 0 needed before a reseed */
+	final static int MIN_POOL_SIZE = 64;
+
+	private final static String POOL_DIGEST = "SHA-256";
+	private final static String SEED_DIGEST = "SHA-512";
+
+	private final MessageDigest[] pools = new MessageDigest[POOLS];
+	private final long[] sizes = new long[POOLS];
+
+	/* next pool for the events of each source */
+	private final int[] nextPool = new int[256];
+
+	private long reseeds = 0;
+
+	/**
+	 * create empty pools
+	 */
+	public FortunaAccumulator() {
+		try {
+			for (int i = 0; i < POOLS; i++) {
+				pools[i] = MessageDigest.getInstance(POOL_DIGEST);
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * add an entropy event to the next pool for its source
+	 *
+	 * @param source number of the source, 0 to 255
+	 * @param data event data
+	 */
+	public synchronized void addEvent(final int source, final byte[] data) {
+
+		final int pool = nextPool[source & 0xFF];
+		nextPool[source & 0xFF] = (pool + 1) % POOLS;
+
+		pools[pool].update((byte) source);
+		pools[pool].update((byte) data.length);
+		pools[pool].update(data);
+		sizes[pool] += data.length;
+	}
+
+	/**
+	 * whether pool 0 has enough entropy for a reseed, counting the bytes of the events
+	 * added to it since the last reseed
+	 *
+	 * @return true if ready
+	 */
+	public synchronized boolean isReady() {
+		return sizes[0] >= MIN_POOL_SIZE;
+	}
+
+	/**
+	 * empty the pools due for this reseed into a seed
+	 *
+	 * @return seed, the digest of the pool digests
+	 */
+	public synchronized byte[] reseed() {
+
+		reseeds++;
+
+		try {
+			final MessageDigest seed = MessageDigest.getInstance(SEED_DIGEST);
+
+			for (int i = 0; i < POOLS && (reseeds & ((1L << i) - 1)) == 0; i++) {
+				seed.update(pools[i].digest());
+				sizes[i] = 0;
+			}
+			return seed.digest();
+
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * number of reseeds
+	 *
+	 * @return reseeds
+	 */
+	public synchronized long getReseeds() {
+		return reseeds;
+	}
+}
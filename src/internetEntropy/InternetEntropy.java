@@ -2,15 +2,42 @@ package internetEntropy;
 
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.Flow;
 
 /**
  * class uses internet sources to get variable data for random entropy.
  * Most of them use weather maps/data, but google news is also used.
+ * 
+ * All sources are fetched at the same time, and whatever has arrived by the deadline
+ * is digested, so one slow or dead host can not hold up reseeding. The latency and size
+ * of each source is kept in a report for the last fetch.
+ * 
+ * Each source is digested as its bytes arrive, and the reading stops after BUFSIZE bytes.
+ * The digest of each source is cached with its ETag and Last-Modified headers, so an
+ * unchanged source answers a conditional request without sending its content again, and
+ * a source fetched within the last TTL is not fetched again at all. The cache is shared
+ * by all instances so that many generators reseeding together make one request per source.
+ * Only the body of a 2xx response is digested. Other statuses count as failures, and a
+ * cached or unchanged source is reported but adds nothing, since its digest is not new.
+ * The latency of every fetch is also counted in EntropyMetrics.
  * @author mclark
  * @version 1.0
  * 
@@ -50,10 +77,162 @@ public class InternetEntropy {
 	/* default digest to generate random numbers */
 	private final static String DEFAULT_DIGEST = "SHA-512";
 	
-	final int BUFSIZE = 16384; // maximum bytes to read from any source
-	final int CHUNK = 2048;    // buffer size for reading
+	/* default time allowed for all the sources together */
+	final static Duration DEFAULT_DEADLINE = Duration.ofSeconds(10);
+	final static Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+	/* default time a fetched source is reused before it is requested again */
+	final static Duration DEFAULT_TTL = Duration.ofSeconds(30);
+	
+	final int BUFSIZE = 16384; // maximum bytes to use from any source
 	final boolean DEBUG = false;
 	
+	/* shared client, its threads are daemon threads */
+	private static final HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(CONNECT_TIMEOUT)
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build();
+	
+	/* latest fetch of each url, shared by all instances */
+	private static final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+	
+	private final String[] urls;
+	private final Duration deadline;
+	private final Duration ttl;
+	private volatile List<SourceReport> report = Collections.emptyList();
+	
+	/**
+	 * digest of one source and the headers needed to ask for it again only if changed
+	 */
+	static final class SourceResult {
+		
+		final byte[] digest;
+		final int bytes;
+		final String etag;
+		final String lastModified;
+		final long completed;
+		final String status;
+		/* true if the digest is of content sent by this fetch, not a repeat of an older one */
+		final boolean fresh;
+		
+		SourceResult(final byte[] digest, final int bytes, final String etag, final String lastModified, 
+				final String status, final boolean fresh) {
+			this.digest = digest;
+			this.bytes = bytes;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.status = status;
+			this.fresh = fresh;
+			completed = System.nanoTime();
+		}
+	}
+	
+	/**
+	 * a fetch of one source, in progress or done, with the last good result before it
+	 */
+	static final class CacheEntry {
+		
+		final CompletableFuture<SourceResult> fetch;
+		final long started;
+		final SourceResult previous;
+		
+		CacheEntry(final CompletableFuture<SourceResult> fetch, final long started, final SourceResult previous) {
+			this.fetch = fetch;
+			this.started = started;
+			this.previous = previous;
+		}
+		
+		/**
+		 * last good result of this source
+		 * @return result or null
+		 */
+		SourceResult latest() {
+			if (fetch.isDone() && !fetch.isCompletedExceptionally()) return fetch.join();
+			return previous;
+		}
+	}
+	
+	/**
+	 * body subscriber that digests the body as it arrives, and stops reading after a limit.
+	 * The result is the digest of the bytes read.
+	 */
+	static final class DigestSubscriber implements HttpResponse.BodySubscriber<byte[]> {
+		
+		private final MessageDigest digest;
+		private final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+		private int remaining;
+		private int bytes = 0;
+		private Flow.Subscription subscription;
+		
+		DigestSubscriber(final MessageDigest digest, final int limit) {
+			this.digest = digest;
+			remaining = limit;
+		}
+		
+		int getBytes() {
+			return bytes;
+		}
+		
+		public CompletionStage<byte[]> getBody() {
+			return result;
+		}
+		
+		public void onSubscribe(final Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+		
+		public void onNext(final List<ByteBuffer> buffers) {
+			
+			for (final ByteBuffer buffer : buffers) {
+				final int length = Math.min(buffer.remaining(), remaining);
+				buffer.limit(buffer.position() + length);
+				digest.update(buffer);
+				remaining -= length;
+				bytes += length;
+			}
+			
+			if (remaining > 0) {
+				subscription.request(1);
+			} else {
+				subscription.cancel();
+				result.complete(digest.digest());
+			}
+		}
+		
+		public void onError(final Throwable error) {
+			result.completeExceptionally(error);
+		}
+		
+		public void onComplete() {
+			result.complete(digest.digest());
+		}
+	}
+	
+	/**
+	 * result of fetching one source
+	 */
+	public static final class SourceReport {
+		
+		public final String url;
+		/* time from the start of the fetch until the source completed or was abandoned */
+		public final long nanos;
+		/* bytes used from the source */
+		public final int bytes;
+		/* "ok", "timeout" or the error */
+		public final String status;
+		
+		SourceReport(final String url, final long nanos, final int bytes, final String status) {
+			this.url = url;
+			this.nanos = nanos;
+			this.bytes = bytes;
+			this.status = status;
+		}
+		
+		public String toString() {
+			return String.format("%-70s %8.1f ms %6d bytes %s", url, nanos / 1e6, bytes, status);
+		}
+	}
+	
 	/**
 	 * main for testing
 	 * @param args not used
@@ -66,65 +245,191 @@ public class InternetEntropy {
 		byte[] digest = null;
 		
 		for (int i = 0; i < numExamples; i++) {
-			digest = new InternetEntropy().getBytes();
+			final InternetEntropy entropy = new InternetEntropy();
+			digest = entropy.getBytes();
 			System.out.println(bytesToHex(digest));
+			for (final SourceReport source : entropy.getReport()) {
+				System.out.println(source);
+			}
 		}
 	}
 	
 	/**
-	 * get the digest of bytes from the list of sources
+	 * use the default sources and deadline
+	 */
+	public InternetEntropy() {
+		this(urlList, DEFAULT_DEADLINE);
+	}
+	
+	/**
+	 * use the given sources
+	 * 
+	 * @param urls sources to fetch
+	 * @param deadline time allowed for all the sources
+	 */
+	public InternetEntropy(final String[] urls, final Duration deadline) {
+		this(urls, deadline, DEFAULT_TTL);
+	}
+	
+	/**
+	 * use the given sources and cache time
+	 * 
+	 * @param urls sources to fetch
+	 * @param deadline time allowed for all the sources
+	 * @param ttl time a fetched source is reused before requesting it again
+	 */
+	public InternetEntropy(final String[] urls, final Duration deadline, final Duration ttl) {
+		this.urls = urls.clone();
+		this.deadline = deadline;
+		this.ttl = ttl;
+	}
+	
+	/**
+	 * report of each source from the last call to getBytes()
 	 * 
-	 * @return byte[] digest of bytes from random sources
+	 * @return report for each source
+	 */
+	public List<SourceReport> getReport() {
+		return report;
+	}
+	
+	/**
+	 * get the digest of bytes from the list of sources.  All sources are fetched at
+	 * once, and the sources that have not finished by the deadline are left out.
+	 * Only sources that sent new content this call are digested.
+	 * 
+	 * @return byte[] digest of bytes from random sources, or an empty array if no source sent new content
 	 * @throws NoSuchAlgorithmException if SHA-256 digest not available
 	 * @throws IOException on io error
 	 */
 	public byte[] getBytes() throws NoSuchAlgorithmException, IOException {
 		
 		final MessageDigest digest = MessageDigest.getInstance(DEFAULT_DIGEST);
-
-		for (final String url : urlList) {
-			digest.update(getBytes(url));
+		final long start = System.nanoTime();
+		final long end = start + deadline.toNanos();
+		
+		final List<CompletableFuture<SourceResult>> fetches = new ArrayList<CompletableFuture<SourceResult>>();
+		
+		for (final String url : urls) {
+			fetches.add(fetch(url, start));
+		}
+		
+		final List<SourceReport> sources = new ArrayList<SourceReport>();
+		int fresh = 0;
+		
+		for (int i = 0; i < urls.length; i++) {
+			
+			final CompletableFuture<SourceResult> fetch = fetches.get(i);
+			
+			try {
+				final SourceResult result = fetch.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+				
+				if (result.completed < start) {
+					sources.add(new SourceReport(urls[i], 0, 0, "cached"));
+				} else {
+					sources.add(new SourceReport(urls[i], result.completed - start, result.bytes, result.status));
+					
+					// an unchanged source repeats an old digest, which is not new entropy
+					if (result.fresh) {
+						digest.update(result.digest);
+						fresh++;
+					}
+				}
+				
+			} catch (TimeoutException e) {
+				// the fetch is shared, so it is left to finish for later callers
+				sources.add(new SourceReport(urls[i], System.nanoTime() - start, 0, "timeout"));
+			} catch (ExecutionException e) {
+				sources.add(new SourceReport(urls[i], System.nanoTime() - start, 0, String.valueOf(e.getCause())));
+				System.err.println("error reading " + urls[i]);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				sources.add(new SourceReport(urls[i], System.nanoTime() - start, 0, "interrupted"));
+			}
+			
 			// add something to ensure uniqueness if the source didn't change
 			digest.update(String.valueOf(System.nanoTime()).getBytes());
+			
+			if (DEBUG) System.out.println(sources.get(i));
 		}
 		
-		return digest.digest();
+		report = Collections.unmodifiableList(sources);
+		return fresh == 0 ? new byte[0] : digest.digest();
+	}
+	
+	/**
+	 * get the fetch of a url. A fetch still running, or one that finished within the
+	 * cache time, is shared. Otherwise a new request is started, conditional on the
+	 * headers of the last good result.
+	 * 
+	 * @param url URL to read
+	 * @param now time of the request
+	 * @return result of the fetch when it arrives
+	 */
+	private final CompletableFuture<SourceResult> fetch(final String url, final long now) {
+		
+		return cache.compute(url, (key, entry) -> {
+			
+			if (entry != null) {
+				if (!entry.fetch.isDone() && now - entry.started < deadline.toNanos()) return entry;
+				
+				if (entry.fetch.isDone() && !entry.fetch.isCompletedExceptionally() 
+						&& now - entry.fetch.join().completed < ttl.toNanos()) return entry;
+			}
+			
+			final SourceResult previous = entry == null ? null : entry.latest();
+			return new CacheEntry(request(url, previous), now, previous);
+			
+		}).fetch;
 	}
 
 	/**
-	 * get bytes from a url.
+	 * start reading a url. The body is digested as it arrives.
 	 * 
 	 * @param url  URL to read to get bytes
-	 * @return  byte[] read from the url
-	 * @throws IOException on error
+	 * @param previous last good result for the url, or null
+	 * @return  digest of the bytes read from the url when they arrive
 	 */
-	private final byte[] getBytes(final String url) throws IOException  {
-		
-		final URL source = new URL(url);
-		final URLConnection http = source.openConnection();
-		final byte[] data = new byte[BUFSIZE];
-		
-		int totalBytes = 0;
-		int bytesRead = 1; // set non zero for first run through
-		InputStream reader = null;
+	private final CompletableFuture<SourceResult> request(final String url, final SourceResult previous) {
 		
 		try {
-			reader = http.getInputStream();
-
-			while ((totalBytes + CHUNK) < BUFSIZE && bytesRead > 0) {
-				bytesRead = reader.read(data, totalBytes, CHUNK);
-				totalBytes += bytesRead;
-			}
+			final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+					.timeout(deadline)
+					.GET();
 			
-			if(DEBUG) System.out.println("read " + totalBytes + " bytes from " + url);
+			if (previous != null && previous.etag != null) builder.header("If-None-Match", previous.etag);
+			if (previous != null && previous.lastModified != null) builder.header("If-Modified-Since", previous.lastModified);
 			
-		} catch (IOException ioe) {
-				System.err.println("error reading " + url);
-		} finally {
-			if (reader != null) reader.close();
+			final DigestSubscriber[] body = new DigestSubscriber[1];
+			final MessageDigest digest = MessageDigest.getInstance(DEFAULT_DIGEST);
+			final long start = System.nanoTime();
+			
+			return client.sendAsync(builder.build(), info -> {
+				// only the body of a successful response is digested
+				if (info.statusCode() / 100 != 2) return HttpResponse.BodySubscribers.replacing((byte[]) null);
+				body[0] = new DigestSubscriber(digest, BUFSIZE);
+				return body[0];
+				
+			}).thenApply(response -> {
+				
+				if (response.statusCode() == 304 && previous != null) {
+					return new SourceResult(previous.digest, 0, previous.etag, previous.lastModified, "not modified", false);
+				}
+				if (response.statusCode() / 100 != 2) {
+					throw new CompletionException(new IOException("HTTP status " + response.statusCode()));
+				}
+				
+				return new SourceResult(response.body(), body[0].getBytes(),
+						response.headers().firstValue("ETag").orElse(null),
+						response.headers().firstValue("Last-Modified").orElse(null),
+						"ok", true);
+				
+			}).whenComplete((result, error) -> EntropyMetrics.getInstance().fetched(url, System.nanoTime() - start,
+					result == null ? 0 : result.bytes, error != null));
+			
+		} catch (IllegalArgumentException | NoSuchAlgorithmException e) {
+			return CompletableFuture.failedFuture(e);
 		}
-
-		return data;
 	}
 	
 	
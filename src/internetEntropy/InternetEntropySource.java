@@ -0,0 +1,49 @@
+package internetEntropy;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * entropy from the internet sources of InternetEntropy. Its budget is the fetch deadline
+ * plus a little, since InternetEntropy itself leaves out sources that are too slow.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class InternetEntropySource implements EntropySource {
+
+	final static long TIME_BUDGET = InternetEntropy.DEFAULT_DEADLINE.toMillis() + 1000; // milliseconds
+
+	public String getName() {
+		return "internet";
+	}
+
+	public long getTimeBudget() {
+		return TIME_BUDGET;
+	}
+
+	public byte[] getEntropy() throws IOException {
+		try {
+			return new InternetEntropy().getBytes();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package internetEntropy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * entropy from cpu timing jitter, in the spirit of jitterentropy-rng.  The time taken by a
+ * loop of data dependent memory accesses and branches varies with cache, pipeline and
+ * interrupt state, and the variation of the measured System.nanoTime() deltas is collected.
+ *
+ * Each delta goes through a stuck test (the delta and its first and second differences must
+ * be non-zero), and the SP 800-90B repetition count and adaptive proportion health tests,
+ * assuming at least one bit of entropy per sample. A block of 512 * OVERSAMPLING samples
+ * is conditioned with SHA-512 into 64 bytes of output; blocks in which a health test
+ * fails are thrown away.  Collection stops when the requested bytes are ready or the time
+ * budget is used up, so the cost of each reseed is predictable, and it needs no network.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class JitterEntropySource implements EntropySource {
+
+	/* default digest to condition the samples */
+	private final static String DEFAULT_DIGEST = "SHA-512";
+
+	final static int DEFAULT_SIZE = 64;      // bytes of output
+	final static long DEFAULT_BUDGET = 100;  // milliseconds
+	final static int OVERSAMPLING = 2;       // samples per bit of output
+	final static int MEMORY_SIZE = 1 << 16;  // bytes of memory walked by the noise loop
+	final static int MEMORY_STEPS = 64;      // memory accesses per sample
+	final static int MEMORY_STRIDE = 67;     // prime step through the memory
+
+	/*
+	 * health test cutoffs for a false alarm probability of 2^-20 with one bit of
+	 * min-entropy per sample (SP 800-90B section 4.4).
+	 */
+	final static int RCT_CUTOFF = 21;
+	final static int APT_WINDOW = 512;
+	final static int APT_CUTOFF = 410;
+
+	private final int size;
+	private final long budget;
+	private final byte[] memory = new byte[MEMORY_SIZE];
+	private int memoryIndex = 0;
+
+	/* previous time and deltas for the stuck test */
+	private long lastTime;
+	private long lastDelta;
+	private long lastDelta2;
+
+	/* repetition count test */
+	private long rctValue;
+	private int rctCount;
+
+	/* adaptive proportion test */
+	private long aptBase;
+	private int aptCount;
+	private int aptSamples;
+
+	/* number of blocks thrown away because of a health test failure */
+	private long failures = 0;
+
+	/**
+	 * source with the default size and time budget
+	 */
+	public JitterEntropySource() {
+		this(DEFAULT_SIZE, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * source with a given size and time budget
+	 *
+	 * @param size bytes to deliver
+	 * @param budget time budget in milliseconds
+	 */
+	public JitterEntropySource(final int size, final long budget) {
+		this.size = size;
+		this.budget = budget;
+	}
+
+	public String getName() {
+		return "jitter";
+	}
+
+	public long getTimeBudget() {
+		return budget;
+	}
+
+	/**
+	 * number of blocks that failed a health test
+	 * @return failures
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * collect jitter entropy. Returns fewer bytes than requested, possibly none, if the
+	 * time budget runs out first.
+	 *
+	 * @return conditioned entropy bytes
+	 */
+	public synchronized byte[] getEntropy() throws IOException {
+
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DEFAULT_DIGEST);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		// stop a little before the budget so the result is collected in time
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget) * 4 / 5;
+		final int samplesPerBlock = digest.getDigestLength() * 8 * OVERSAMPLING;
+		final byte[] sample = new byte[8];
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+		resetHealth();
+		lastTime = System.nanoTime();
+
+		while (result.size() < size && System.nanoTime() < deadline) {
+
+			boolean healthy = true;
+			int samples = 0;
+
+			while (samples < samplesPerBlock && System.nanoTime() < deadline) {
+
+				final long delta = measure();
+				final long delta2 = delta - lastDelta;
+				final long delta3 = delta2 - lastDelta2;
+				lastDelta = delta;
+				lastDelta2 = delta2;
+
+				// stuck samples carry no entropy and are not counted
+				if (delta == 0 || delta2 == 0 || delta3 == 0) continue;
+
+				healthy &= healthTest(delta);
+
+				for (int i = 0; i < 8; i++) {
+					sample[i] = (byte) (delta >>> (8 * i));
+				}
+				digest.update(sample);
+				samples++;
+			}
+
+			if (!healthy) {
+				failures++;
+				digest.reset();
+				resetHealth();
+			} else if (samples == samplesPerBlock) {
+				final byte[] block = digest.digest();
+				result.write(block, 0, Math.min(block.length, size - result.size()));
+			}
+		}
+
+		Arrays.fill(sample, (byte) 0);
+		return result.toByteArray();
+	}
+
+	/**
+	 * time one run of the noise loop
+	 *
+	 * @return time since the last measurement in nanoseconds
+	 */
+	private long measure() {
+
+		final long time = System.nanoTime();
+		final long delta = time - lastTime;
+		lastTime = time;
+
+		noise((int) delta);
+		return delta;
+	}
+
+	/**
+	 * memory access and branch heavy work whose duration varies with the state of the
+	 * cpu. The path depends on the last time delta.
+	 *
+	 * @param seed low bits of the last delta
+	 */
+	private void noise(final int seed) {
+
+		final byte[] memory = this.memory;
+		int index = memoryIndex;
+
+		for (int i = 0; i < MEMORY_STEPS; i++) {
+			memory[index]++;
+			index = (index + MEMORY_STRIDE + (memory[index] & 0x7)) & (MEMORY_SIZE - 1);
+		}
+		memoryIndex = index;
+
+		int value = seed;
+		final int loops = 1 + (seed & 0xF);
+		for (int i = 0; i < loops; i++) {
+			if ((value & 1) == 0) {
+				value = value >>> 1 ^ 0x6D2B79F5;
+			} else {
+				value = value * 31 + i;
+			}
+		}
+		memory[index] ^= (byte) value;
+	}
+
+	/**
+	 * repetition count and adaptive proportion tests for one sample
+	 *
+	 * @param delta sample
+	 * @return false if a test failed
+	 */
+	private boolean healthTest(final long delta) {
+
+		boolean healthy = true;
+
+		if (delta == rctValue) {
+			if (++rctCount >= RCT_CUTOFF) healthy = false;
+		} else {
+			rctValue = delta;
+			rctCount = 1;
+		}
+
+		if (aptSamples == 0) {
+			aptBase = delta;
+			aptCount = 1;
+		} else if (delta == aptBase && ++aptCount >= APT_CUTOFF) {
+			healthy = false;
+		}
+		if (++aptSamples == APT_WINDOW) aptSamples = 0;
+
+		return healthy;
+	}
+
+	/**
+	 * restart the health tests
+	 */
+	private void resetHealth() {
+		rctCount = 0;
+		aptSamples = 0;
+	}
+}
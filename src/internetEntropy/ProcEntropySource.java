@@ -0,0 +1,45 @@
+package internetEntropy;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * entropy from Linux kernel counters in /proc: interrupt counts per cpu, disk activity,
+ * and memory and process statistics. These change all the time on a running system and
+ * are read without any network access.  On other systems the files do not exist and the
+ * source returns nothing.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class ProcEntropySource extends FileHashSource {
+
+	final static Path[] procFiles = {
+			Paths.get("/proc/interrupts"),
+			Paths.get("/proc/diskstats"),
+			Paths.get("/proc/stat"),
+			Paths.get("/proc/meminfo"),
+			Paths.get("/proc/self/stat")
+	};
+
+	public ProcEntropySource() {
+		super("proc", procFiles);
+	}
+}
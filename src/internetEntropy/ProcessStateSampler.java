@@ -0,0 +1,149 @@
+package internetEntropy;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * entropy from the state of this process: cpu times, thread counts, garbage collector
+ * counts and times, allocated bytes and memory use.  This is pretty weak entropy since
+ * it is likely to be similar on different computers, however the low bits of the
+ * counters change quickly and it costs only a few microseconds.
+ *
+ * The management beans are looked up once, and only cheap counters are read, by direct
+ * calls.  Calls that scale with the number of threads, such as thread dumps and
+ * getAllThreadIds, are avoided. HotSpot safepoint statistics are not available through
+ * the public management interfaces, so the collector counts and times stand in for them.
+ *
+ * The time each sample takes is recorded, and is itself mixed into the next sample.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class ProcessStateSampler implements EntropySource {
+
+	final static long DEFAULT_BUDGET = 10; // milliseconds
+
+	/* counters read per sample, other than the collectors */
+	private final static int COUNTERS = 16;
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+	private final ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+	/* HotSpot extensions, null if the JVM does not provide them */
+	private final com.sun.management.ThreadMXBean allocation;
+	private final com.sun.management.OperatingSystemMXBean system;
+
+	private final boolean threadCpuTime;
+
+	/* duration of the last sample in nanoseconds */
+	private volatile long lastSampleNanos = 0;
+
+	/**
+	 * look up the management beans
+	 */
+	public ProcessStateSampler() {
+
+		allocation = threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+				? (com.sun.management.ThreadMXBean) threads : null;
+
+		system = ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean
+				? (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean() : null;
+
+		threadCpuTime = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+	}
+
+	public String getName() {
+		return "process state";
+	}
+
+	public long getTimeBudget() {
+		return DEFAULT_BUDGET;
+	}
+
+	/**
+	 * time taken by the last sample
+	 *
+	 * @return nanoseconds
+	 */
+	public long getLastSampleNanos() {
+		return lastSampleNanos;
+	}
+
+	/**
+	 * sample the process counters
+	 *
+	 * @return counter values
+	 */
+	public byte[] getEntropy() {
+
+		final long start = System.nanoTime();
+		final ByteBuffer sample = ByteBuffer.allocate(Long.BYTES * (COUNTERS + 2 * collectors.size()));
+
+		sample.putLong(start);
+		sample.putLong(lastSampleNanos);
+
+		if (threadCpuTime) {
+			sample.putLong(threads.getCurrentThreadCpuTime());
+			sample.putLong(threads.getCurrentThreadUserTime());
+		}
+		sample.putLong(threads.getThreadCount());
+		sample.putLong(threads.getDaemonThreadCount());
+		sample.putLong(threads.getPeakThreadCount());
+		sample.putLong(threads.getTotalStartedThreadCount());
+
+		if (allocation != null) {
+			sample.putLong(allocation.getCurrentThreadAllocatedBytes());
+		}
+		if (system != null) {
+			sample.putLong(system.getProcessCpuTime());
+		}
+
+		for (final GarbageCollectorMXBean collector : collectors) {
+			sample.putLong(collector.getCollectionCount());
+			sample.putLong(collector.getCollectionTime());
+		}
+
+		final MemoryUsage heap = memory.getHeapMemoryUsage();
+		sample.putLong(heap.getUsed());
+		sample.putLong(heap.getCommitted());
+		sample.putLong(memory.getNonHeapMemoryUsage().getUsed());
+
+		sample.putLong(classes.getTotalLoadedClassCount());
+		sample.putLong(runtime.getUptime());
+		sample.putLong(System.nanoTime());
+
+		lastSampleNanos = System.nanoTime() - start;
+
+		final byte[] result = new byte[sample.position()];
+		sample.flip().get(result);
+		return result;
+	}
+}
@@ -0,0 +1,82 @@
+package internetEntropy;
+
+/**
+ * when to reseed a generator from its accumulator. A generator is reseeded once it has
+ * produced volume draws since its last reseed, or after maxInterval if it has produced 
+ * anything at all, but never more often than minInterval.  Idle generators are not 
+ * reseeded, and busy ones are reseeded in proportion to their output.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class ReseedPolicy {
+
+	/* reseed after a million draws, at most every 100 ms, and at least every 5 minutes when used */
+	public final static ReseedPolicy DEFAULT = new ReseedPolicy(1 << 20, 100, 1000 * 60 * 5);
+
+	private final long volume;
+	private final long minInterval;
+	private final long maxInterval;
+
+	/**
+	 * create a policy
+	 *
+	 * @param volume draws (getCalls) between reseeds
+	 * @param minInterval shortest time between reseeds in milliseconds
+	 * @param maxInterval longest time between reseeds of a generator in use, in milliseconds
+	 */
+	public ReseedPolicy(final long volume, final long minInterval, final long maxInterval) {
+
+		if (volume <= 0 || minInterval < 0 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("invalid reseed policy");
+		}
+		this.volume = volume;
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+	}
+
+	/**
+	 * decide whether to reseed
+	 *
+	 * @param draws draws since the last reseed
+	 * @param elapsed milliseconds since the last reseed
+	 * @return true to reseed
+	 */
+	public boolean shouldReseed(final long draws, final long elapsed) {
+		return draws > 0 && elapsed >= minInterval && (draws >= volume || elapsed >= maxInterval);
+	}
+
+	public long getVolume() {
+		return volume;
+	}
+
+	public long getMinInterval() {
+		return minInterval;
+	}
+
+	public long getMaxInterval() {
+		return maxInterval;
+	}
+
+	@Override
+	public String toString() {
+		return "ReseedPolicy[volume=" + volume + ", minInterval=" + minInterval + ", maxInterval=" + maxInterval + "]";
+	}
+}
@@ -0,0 +1,48 @@
+package internetEntropy;
+
+import java.security.SecureRandom;
+
+/**
+ * entropy from the seed generator of SecureRandom. This may use cpu supported random
+ * numbers in some Java implementations, and can block on systems short of entropy, which
+ * is why it has a time budget like the other sources.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class SecureRandomSource implements EntropySource {
+
+	final static int SIZE = 16;           // bytes of seed
+	final static long TIME_BUDGET = 1000; // milliseconds
+
+	private final SecureRandom random = new SecureRandom();
+
+	public String getName() {
+		return "SecureRandom";
+	}
+
+	public long getTimeBudget() {
+		return TIME_BUDGET;
+	}
+
+	public byte[] getEntropy() {
+		return random.generateSeed(SIZE);
+	}
+}
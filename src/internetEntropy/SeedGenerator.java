@@ -1,15 +1,14 @@
 package internetEntropy;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.lang.management.ManagementFactory;
-import java.lang.management.RuntimeMXBean;
-import java.lang.management.ThreadMXBean;
-import java.lang.reflect.Method;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import prng.DigestRandom;
 import prng.MultiRandom;
@@ -17,6 +16,10 @@ import prng.MultiRandom;
  * class to generate random seeds using hardware random sources, and internet
  * sources.
  * 
+ * The sources are the EntropySources. They are all read at the same time, each within 
+ * its own time budget, so a slow or unreachable source delays a seed only by its budget,
+ * and seeding works without a network.
+ * 
  *      copyright 2019 Matthew Clark
  
      This file is part of TrueRandom.
@@ -41,10 +44,15 @@ import prng.MultiRandom;
 public class SeedGenerator  {
 
 	private static DigestRandom random = null;
-	private static SecureRandom srand = null;	
-	final static long INTERVAL = 1000 * 60 * 5; //update interval in milliseconds
+	
+	/* threads that read the entropy sources. Daemon threads, since a source that overruns
+	 * its budget is abandoned and may still be running. */
+	private static final ExecutorService gatherer = Executors.newCachedThreadPool(task -> {
+		final Thread thread = new Thread(task, "entropy source");
+		thread.setDaemon(true);
+		return thread;
+	});
 	final static boolean DEBUG = false;
-	final static int SEED_SIZE = 2048; // seed size for randomness updater
 
 	/**
 	 * generate a key using fairly random input. This is faster than the random device as it
@@ -61,15 +69,6 @@ public class SeedGenerator  {
 			random = new DigestRandom();
 		}
 
-		/*
- 		* generate entropy from hardware as well. This is limited and
- 		* will block if we try to read a lot from it.  It may read from
- 		* the CPU or other hardware randomness sources.
- 		*/	
-		if (srand == null) {
-			srand = new SecureRandom();
-		}
-	
 		random.setSeed(getEntropy());
 		
 		final byte[] result = new byte[size];
@@ -89,111 +88,56 @@ public class SeedGenerator  {
 		// use the current time
 		result.write((int)System.nanoTime());
 		
-		// get entropy from "hardware" algorithm implemented in
-		// secureRandom.  This may include cpu-supported randomization
-		// in some Java implementations
+		// read all sources at once, and wait for each until its budget from the start
+		final List<EntropySource> sources = new ArrayList<EntropySource>(EntropySources.getSources());
+		final List<Future<byte[]>> reads = new ArrayList<Future<byte[]>>();
+		final long start = System.nanoTime();
 		
-		try {
-			result.write(srand.generateSeed(16));
-		} catch (IOException e1) {
-			System.err.println("error using secureRandom");
+		for (final EntropySource source : sources) {
+			reads.add(gatherer.submit(source::getEntropy));
 		}
-
-		// get some entropy from web sources
-		try {
+		
+		for (int i = 0; i < sources.size(); i++) {
 			
-			byte[] internet = new InternetEntropy().getBytes();
-			result.write(internet);
+			final EntropySource source = sources.get(i);
+			final Future<byte[]> read = reads.get(i);
+			final long end = start + TimeUnit.MILLISECONDS.toNanos(source.getTimeBudget());
 			
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		/*
-		 * get some entropy from process state.  This is pretty weak entropy
-		 * since it is likely to be similar on different computers. However it 
-		 * provides a measure of extra data.
-		 */
-		final ThreadMXBean threadMXBean = 
-				(ThreadMXBean) ManagementFactory.getThreadMXBean();
-
-		final RuntimeMXBean runtimeMXBean = ManagementFactory.getRuntimeMXBean();
-
-		for (final Method beanMethod : runtimeMXBean.getClass().getMethods()) {
-			if (beanMethod.getAnnotatedParameterTypes().length == 0) {
-				try {
-					beanMethod.setAccessible(true);
-					final Object item = beanMethod.invoke(runtimeMXBean, (Object[])null);
-					result.write(item.hashCode());
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+			try {
+				final byte[] bytes = read.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+				result.write(bytes, 0, bytes.length);
+				if (DEBUG) System.out.println(source.getName() + " " + bytes.length + " bytes");
+				
+			} catch (TimeoutException e) {
+				read.cancel(true);
+				if (DEBUG) System.out.println(source.getName() + " over time budget");
+			} catch (ExecutionException e) {
+				System.err.println("error reading entropy source " + source.getName() + ": " + e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				read.cancel(true);
 			}
 		}
 
-		for (final Method beanMethod : threadMXBean.getClass().getMethods()) {
-			if (beanMethod.getAnnotatedParameterTypes().length == 0) {
-				try {
-					beanMethod.setAccessible(true);
-					final Object item  = beanMethod.invoke(threadMXBean, (Object[])null);
-					result.write(item.hashCode());
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}
-		
 		return result.toByteArray();
 	}
 	
 	
 	/**
-	 * create a seed generator service that updates the random generators every hour with
-	 * new random information from various sources.
-	 * 
-	 * @param random MultiRandom random number generator to update.
+	 * create a seed generator
 	 */
-	public SeedGenerator(final MultiRandom random) {
-		
-		final long interval = INTERVAL; // update interval
-		
-		final Timer updater = new Timer("randomness updater");
-		UpdateEntropy updateTask = new UpdateEntropy(this, random);
-        updater.schedule(updateTask, 0, interval);
+	public SeedGenerator() {
 	}
 	
 	
 	/**
-	 * periodic entropy updater. Gathers entropy and reseeds generators at some 
-	 * period.
+	 * register a generator with the EntropyHub, which updates it every few minutes
+	 * with new random information from various sources. The registration is not
+	 * returned, so it can not be closed; use EntropyHub.register for that.
 	 * 
-	 * @author mclark
-	 *
+	 * @param random MultiRandom random number generator to update.
 	 */
-	public class UpdateEntropy extends TimerTask  {
-
-		   SeedGenerator seeder = null;
-		   MultiRandom random = null;
-		   long updates = 0;
-		   
-		   public UpdateEntropy(SeedGenerator seeder, MultiRandom random) {
-			  this.seeder = seeder;
-			  this.random = random;
-		   }
-
-		   public void run() {
-		       try {
-		    	   final byte[] seed = seeder.generateSeed(SEED_SIZE);
-		    	   random.setSeed(seed);
-		    	   updates++;
-		    	   if (DEBUG) System.out.println("update " + updates + "updated seed: " + InternetEntropy.bytesToHex(seed));
-
-		       } catch (Exception ex) {
-		           System.err.println("error running thread " + ex.getMessage());
-		           ex.printStackTrace();
-		       }
-		    }
-		}
+	public SeedGenerator(final MultiRandom random) {
+		EntropyHub.getInstance().register(random);
+	}
 }
@@ -0,0 +1,68 @@
+package internetEntropy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * entropy from the operating system random device, /dev/urandom, read through a
+ * FileChannel. It does not block and needs no network.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class URandomSource implements EntropySource {
+
+	final static Path DEVICE = Paths.get("/dev/urandom");
+	final static int SIZE = 64;          // bytes to read
+	final static long TIME_BUDGET = 100; // milliseconds
+
+	public String getName() {
+		return "urandom";
+	}
+
+	public long getTimeBudget() {
+		return TIME_BUDGET;
+	}
+
+	/**
+	 * read bytes from the random device
+	 *
+	 * @return random bytes, or an empty array if there is no device
+	 */
+	public byte[] getEntropy() throws IOException {
+
+		if (!Files.isReadable(DEVICE)) return new byte[0];
+
+		final ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		try (FileChannel channel = FileChannel.open(DEVICE, StandardOpenOption.READ)) {
+			while (buffer.hasRemaining() && channel.read(buffer) > 0);
+		}
+
+		final byte[] result = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(result);
+		return result;
+	}
+}
@@ -1,10 +1,17 @@
 package prng;
 
+import java.nio.ByteBuffer;
+
 /**
  * Blum Blum Shub algorithm to generate random number sequences
  * 
  * x(n+1) = x(n)^2 mod M  where M is a product of two large prime numbers
  * 
+ * The square is reduced with Montgomery multiplication, so it is exact in 64 bit
+ * arithmetic. The state is kept in Montgomery form, x * 2^64 mod M; squaring in that form
+ * gives the form of x^2 mod M, so the sequence is the Blum Blum Shub sequence seen through
+ * a fixed one to one mapping and no conversion is needed. Seeds are mapped onto numbers
+ * prime to M, so the sequence can not reach zero.
  * 
  *   copyright 2019 Matthew Clark
  
@@ -30,9 +37,15 @@ public class BlumBlumShub extends ExtendedRandom {
 
 
 	private static final long serialVersionUID = -3752716805248928524L;
-	// The 9,999,979,999th prime is 252,097,271,807.
-	// this does not use all 64 bits so the 'next' method will use the lower 32 bits.
-	private static final long M = 252097271807L * 518649336203L;
+	// primes p where (p - 1) / 2 and (p - 3) / 4 are also prime, so the period is near 2^59.
+	private static final long P = 2147454839L;
+	private static final long Q = 2147450519L;
+	// below 2^62, so sums in the reduction do not overflow.
+	// this does not use all 64 bits so the 'next' method will use the middle 32 bits.
+	private static final long M = P * Q;
+	
+	/* -1 / M modulo 2^64, for the Montgomery reduction */
+	private static final long M_INVERSE = negativeInverse(M);
 	
 
 	/**
@@ -49,8 +62,73 @@ public class BlumBlumShub extends ExtendedRandom {
 	 */
 	protected synchronized final int next(int bits) {
 
-		seed = (seed * seed) % M;
+		seed = square(seed);
 		return (int) (seed >>> (48 - bits));
 	}
+	
+	/**
+	 * add to the seed, and map it onto the sequence
+	 */
+	@Override
+	public synchronized void setSeed(final long nseed) {
+		super.setSeed(nseed);
+		seed = toUnit(seed);
+	}
+	
+	/**
+	 * mix into the seed, and map it onto the sequence
+	 */
+	@Override
+	public synchronized void absorb(final ByteBuffer input) {
+		super.absorb(input);
+		seed = toUnit(seed);
+	}
+	
+	/**
+	 * Montgomery square: x * x / 2^64 mod M for x in [0, M)
+	 * 
+	 * @param x value in Montgomery form
+	 * @return square in Montgomery form
+	 */
+	static long square(final long x) {
+		
+		final long low = x * x;
+		final long high = Math.multiplyHigh(x, x);
+		
+		// low + m * M is a multiple of 2^64, with a carry out unless low is zero
+		final long m = low * M_INVERSE;
+		final long result = high + unsignedMultiplyHigh(m, M) + (low != 0 ? 1 : 0);
+		return result >= M ? result - M : result;
+	}
+	
+	/**
+	 * map a seed onto a number in [2, M) that is prime to M
+	 * 
+	 * @param value any value
+	 * @return seed for the sequence
+	 */
+	static long toUnit(final long value) {
+		
+		long x = Math.floorMod(value, M);
+		while (x < 2 || x % P == 0 || x % Q == 0) {
+			x = (x + 1) % M;
+		}
+		return x;
+	}
+	
+	/**
+	 * -1 / m modulo 2^64 by Newton's iteration, each step doubling the correct bits
+	 * 
+	 * @param m odd modulus
+	 * @return negative inverse
+	 */
+	private static long negativeInverse(final long m) {
+		
+		long inverse = m;  // correct to 3 bits for odd m
+		for (int i = 0; i < 5; i++) {
+			inverse *= 2 - m * inverse;
+		}
+		return -inverse;
+	}
 
 }
@@ -1,13 +1,16 @@
 package prng;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Random;
 
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 /**
@@ -15,6 +18,10 @@ import javax.crypto.spec.SecretKeySpec;
  * and encrypts so that the byte sequence is the output of AES encryption.  From the idea 
  * of D.E. Shaw group.
  * 
+ * The counters are encrypted with AES in counter mode, a large block of counters in each
+ * call to the cipher, and random numbers are served from the buffered key stream. Encrypting
+ * many blocks per call lets the JVM use the AES instructions of the processor efficiently.
+ * 
  *
  *   copyright 2019 Matthew Clark
  
@@ -41,22 +48,37 @@ public class CBRNG extends ExtendedRandom {
 
 	private static final long serialVersionUID = -2718039215048818753L;
 	/*
-	 * specification of cipher used for encryption
+	 * specification of cipher used for encryption. Counter mode encrypts the counter
+	 * block for each 16 bytes of output.
 	 */
-	private static final String CIPHERSPEC = "AES/CBC/PKCS5Padding";
+	private static final String CIPHERSPEC = "AES/CTR/NoPadding";
 	/*
 	 * depending on the Java deliverable this could be larger, but for most 
 	 * default installations 16 bytes is all the keysize you get. This is the key length for
 	 * each round of encryption.  
 	 */
 	private static final int KEYLEN = 16;
+	/*
+	 * number of counter blocks encrypted in each call to the cipher
+	 */
+	private static final int BLOCKS = 256;
+	private static final int BUFFER_SIZE = BLOCKS * KEYLEN;
+	
+	/* digest for a new key and initialization vector when absorbing entropy */
+	private static final String REKEY_DIGEST = "SHA-256";
+	
 	private Cipher cipher;
 	
-	/* use the standard Random class to increment counter */
+	/* counter of encrypted blocks, the starting value is the low half of the initial counter block */
 	private long counter = Long.MIN_VALUE;
 	
 	private byte[] seed = new byte[KEYLEN];
-	private static final byte[] initializationVector = new byte[KEYLEN];
+	private byte[] initializationVector = new byte[KEYLEN];
+	
+	/* plain text for counter mode is zero, so the key stream is the encrypted counters */
+	private transient byte[] zeros = new byte[BUFFER_SIZE];
+	private transient byte[] keyStream = new byte[BUFFER_SIZE];
+	private transient int index = BUFFER_SIZE;
 	
 
 	/**
@@ -69,11 +91,10 @@ public class CBRNG extends ExtendedRandom {
 		Random random = new Random();
 		try {
 			// random initialization vector, using the base random method
-			byte[] iv = new byte[KEYLEN];
-			random.nextBytes(iv);
+			random.nextBytes(initializationVector);
 			// random seed, using the base Java random source.
 			random.nextBytes(seed);
-			cipher = getCipher(Cipher.ENCRYPT_MODE, seed, iv);
+			cipher = getCipher(Cipher.ENCRYPT_MODE, seed, initializationVector);
 			
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -91,7 +112,10 @@ public class CBRNG extends ExtendedRandom {
 	CBRNG(byte[] seed, byte[] initializationVector) {
 		
 		try {
-			cipher = getCipher(Cipher.ENCRYPT_MODE, seed, initializationVector);
+			System.arraycopy(seed, 0, this.seed, 0, Math.min(KEYLEN, seed.length));
+			System.arraycopy(initializationVector, 0, this.initializationVector, 0, 
+					Math.min(KEYLEN, initializationVector.length));
+			cipher = getCipher(Cipher.ENCRYPT_MODE, this.seed, this.initializationVector);
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.exit(420);
@@ -100,10 +124,12 @@ public class CBRNG extends ExtendedRandom {
 	
 	/**
 	 * get the cipher for encryption.  This method sets the various parameters.
-	 * The key and initialization vector are given as arguments, 
+	 * The key is given as an argument. The first half of the initialization vector is used
+	 * as a nonce, and the second half is the counter, which is reset.
 	 * 
 	 * @param opmode
 	 * @param keyValue
+	 * @param initializationVector
 	 * @return Cipher object ready for encryption
 	 * @throws NoSuchPaddingException 
 	 * @throws NoSuchAlgorithmException 
@@ -114,7 +140,14 @@ public class CBRNG extends ExtendedRandom {
 	private final Cipher getCipher(final int opmode, final byte[] keyValue, final byte[] initializationVector) 
 	throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException  {
 
-		final IvParameterSpec ivp = new IvParameterSpec(initializationVector);
+		counter = Long.MIN_VALUE;
+		index = BUFFER_SIZE;
+		
+		final byte[] counterBlock = new byte[KEYLEN];
+		System.arraycopy(initializationVector, 0, counterBlock, 0, KEYLEN / 2);
+		ByteBuffer.wrap(counterBlock).putLong(KEYLEN / 2, counter);
+		
+		final IvParameterSpec ivp = new IvParameterSpec(counterBlock);
 		final Cipher result = Cipher.getInstance(CIPHERSPEC);
 		final SecretKey key = new SecretKeySpec(keyValue, 0, KEYLEN, CIPHERSPEC.substring(0, CIPHERSPEC.indexOf("/")));
 		result.init(opmode, key, ivp);
@@ -128,6 +161,7 @@ public class CBRNG extends ExtendedRandom {
 		// because of poor implementations Sun java calls this from the root Random class and it
 		// gets executed before this class is initialized
 		if (seed == null) seed = new byte[KEYLEN];
+		if (initializationVector == null) initializationVector = new byte[KEYLEN];
 		
 		// use the LCG random to create a new initialization vector.
 		final Random random = new Random(bytesToLong(newSeed));
@@ -146,29 +180,127 @@ public class CBRNG extends ExtendedRandom {
 		} 
 	}
 
+	/**
+	 * rekey. The new key and initialization vector are the digest of the old ones, the
+	 * next block of the key stream, and the input. 
+	 * 
+	 * @param input entropy
+	 */
+	@Override
+	public synchronized void absorb(final ByteBuffer input) {
+		
+		try {
+			final MessageDigest digest = MessageDigest.getInstance(REKEY_DIGEST);
+			final byte[] stream = new byte[KEYLEN];
+			fill(ByteBuffer.wrap(stream));
+			
+			digest.update(seed);
+			digest.update(initializationVector);
+			digest.update(stream);
+			digest.update(input);
+			
+			final byte[] key = digest.digest();
+			System.arraycopy(key, 0, seed, 0, KEYLEN);
+			System.arraycopy(key, KEYLEN, initializationVector, 0, KEYLEN);
+			cipher = getCipher(Cipher.ENCRYPT_MODE, seed, initializationVector);
+			
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(435);
+		}
+	}
+	
 	@Override
 	int entropySize() {
 		return 16*8;
 	}
-
+	
 	@Override
-	protected synchronized int next(int bits) {
+	void clearState() {
+		seed = new byte[KEYLEN];
+		initializationVector = new byte[KEYLEN];
+	}
+	
+	/**
+	 * split, with the key and initialization vector of the child taken from the key stream.
+	 */
+	@Override
+	public synchronized CBRNG split() {
 		
-		byte[] result = new byte[8]; 
+		final byte[] key = new byte[KEYLEN];
+		final byte[] iv = new byte[KEYLEN];
+		nextBytes(key);
+		nextBytes(iv);
+		return new CBRNG(key, iv);
+	}
+	
+	/**
+	 * encrypt the next block of counters into the key stream buffer.
+	 */
+	private final void encryptCounters() {
 		
 		try {
-			// use the seed as part of the encryption
-			cipher.update(seed);
-			// now add 8 bytes to the seed to create a unique result
-			cipher.update(longToByteArray(counter++));
-			// encrypt the total byte set.
-			result = cipher.doFinal();
-		} catch (Exception e) {
+			cipher.update(zeros, 0, BUFFER_SIZE, keyStream, 0);
+		} catch (ShortBufferException e) {
 			e.printStackTrace();
 			System.exit(430);
-		} 
+		}
+		counter += BLOCKS;
+		index = 0;
+	}
+
+	@Override
+	protected synchronized int next(int bits) {
+		
+		if (index > BUFFER_SIZE - 4) {
+			encryptCounters();
+		}
+		
+		final byte[] keyStream = this.keyStream;
+		final int val =	(keyStream[index]     & 0xFF) << 24 |
+						(keyStream[index + 1] & 0xFF) << 16 |
+						(keyStream[index + 2] & 0xFF) << 8  |
+						(keyStream[index + 3] & 0xFF);
+		index += 4;
+		
+		return val >>> (32 - bits);
+	}
+	
+	/**
+	 * 8 bytes of the key stream
+	 */
+	@Override
+	protected synchronized long nextLong64() {
+		
+		if (index > BUFFER_SIZE - 8) {
+			encryptCounters();
+		}
 		
-		return (int) (bytesToLong(result) >> (64 - bits));
+		long result = 0;
+		for (int i = 0; i < 8; i++) {
+			result = (result << 8) | (keyStream[index++] & 0xFF);
+		}
+		return result;
+	}
+	
+	/**
+	 * fill a buffer by copying runs of the key stream.
+	 * 
+	 * @param buffer buffer to fill
+	 */
+	@Override
+	public synchronized void fill(final ByteBuffer buffer) {
+		
+		while (buffer.hasRemaining()) {
+			
+			if (index >= BUFFER_SIZE) {
+				encryptCounters();
+			}
+			
+			final int count = Math.min(BUFFER_SIZE - index, buffer.remaining());
+			buffer.put(keyStream, index, count);
+			index += count;
+		}
 	}
 
 }
@@ -1,5 +1,7 @@
 package prng;
 
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 
 
@@ -11,6 +13,11 @@ import java.security.MessageDigest;
  * The input data is digested multiple times to make it difficult to predict the
  * next bytes.
  * 
+ * The state is refreshed by digesting straight into a second preallocated buffer, which is
+ * then swapped with the state, so refreshing does not allocate. The first digest of a
+ * refresh takes in any new seed material and the old state; each of the other digests
+ * hashes the first one, the old state and its own index, so they are all different.
+ * 
  *   copyright 2019 Matthew Clark
  
      This file is part of TrueRandom.
@@ -37,9 +44,13 @@ public class DigestRandom extends ExtendedRandom {
 	private MessageDigest digest;
 	/* default digest to generate random numbers */
 	private final static String DEFAULT_DIGEST = "SHA-512";
+	/* default number of digests in the state */
+	private final static int DEFAULT_MULTIPLIER = 4;
 	/* internal state used for generating numbers */
 	private transient byte[] state;
-	private static int stateMultiplier = 4;
+	/* buffer the next state is digested into */
+	private transient byte[] nextState;
+	private final int stateMultiplier;
 	private transient int index;
 
 	private static final long serialVersionUID = 5243129533368229178L;
@@ -66,9 +77,24 @@ public class DigestRandom extends ExtendedRandom {
 	 * java environment.
 	 */
 	DigestRandom(String digestName)  {
+		this(digestName, DEFAULT_MULTIPLIER);
+	}
+	
+	/**
+	 * constructor for new DigestRandom with a given state size.
+	 * 
+	 * @param digestName digest to use for this generator. It must be supported by the
+	 * java environment.
+	 * @param stateMultiplier number of digests held in the state
+	 */
+	DigestRandom(String digestName, int stateMultiplier)  {
+		this.stateMultiplier = stateMultiplier;
 		try {
 			digest = MessageDigest.getInstance(digestName);
 			state = new byte[digest.getDigestLength() * stateMultiplier];
+			nextState = new byte[state.length];
+			// the zero state is refreshed before it is used
+			index = state.length;
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -79,15 +105,46 @@ public class DigestRandom extends ExtendedRandom {
 	 */
 	private synchronized void updateState() {
 		
-		final byte[] result = new byte[state.length];
+		final byte[] result = nextState;
 		final int length = digest.getDigestLength();
 		
-		for (int i = 0; i < stateMultiplier; i++)  {
-			System.arraycopy(digest.digest(state), 0, result, length*i, length);
+		try {
+			// the first part takes in the seed material and the old state.
 			digest.update(state);
+			digest.update((byte) 0);
+			digest.digest(result, 0, length);
+			
+			for (int i = 1; i < stateMultiplier; i++)  {
+				digestPart(digest, result, i);
+			}
+		} catch (DigestException e) {
+			e.printStackTrace();
 		}
-		index = 0;
+		
+		nextState = state;
 		state = result;
+		index = 0;
+	}
+	
+	/**
+	 * digest one part of the next state from the first part, the old state and the part index.
+	 * 
+	 * @param md digest to use
+	 * @param result next state
+	 * @param part index of the part to compute
+	 */
+	private final void digestPart(final MessageDigest md, final byte[] result, final int part) {
+		
+		final int length = md.getDigestLength();
+		
+		try {
+			md.update(result, 0, length);
+			md.update(state);
+			md.update((byte) part);
+			md.digest(result, length * part, length);
+		} catch (DigestException e) {
+			throw new IllegalStateException(e);
+		}
 	}
 	
 	/**
@@ -98,8 +155,23 @@ public class DigestRandom extends ExtendedRandom {
 	 */
 	public void setSeed(final byte[] seed) {
 		if (digest == null) return; // when called before initialization
-		digest.update(seed);
-		updateState();
+		synchronized (this) {
+			digest.update(seed);
+			updateState();
+		}
+	}
+	
+	
+	/**
+	 * digest the input, and refresh the state before the next output so that it depends
+	 * on the input. This costs one pass of the digest over the input.
+	 * 
+	 * @param input entropy
+	 */
+	@Override
+	public synchronized void absorb(final ByteBuffer input) {
+		digest.update(input);
+		index = state.length;
 	}
 	
 	
@@ -132,12 +204,56 @@ public class DigestRandom extends ExtendedRandom {
 	 */
 	protected synchronized final int next(int bits) {
 		
-		final int val =	nextByte() << 24 | 
-						nextByte() << 16 |
-						nextByte() << 8  |
-						nextByte();
+		final byte[] state = this.state;
+		final int val;
+		
+		if (index <= state.length - 4) {
+			val =	(state[index]     & 0xFF) << 24 |
+					(state[index + 1] & 0xFF) << 16 |
+					(state[index + 2] & 0xFF) << 8  |
+					(state[index + 3] & 0xFF);
+			index += 4;
+		} else {
+			val =	nextByte() << 24 | 
+					nextByte() << 16 |
+					nextByte() << 8  |
+					nextByte();
+		}
 		
 		return val >>> (32 - bits);
 	}
+	
+	/**
+	 * split, with the child seeded from a full state of bytes from this generator.
+	 */
+	@Override
+	public synchronized DigestRandom split() {
+		
+		final DigestRandom child = new DigestRandom(digest.getAlgorithm(), stateMultiplier);
+		final byte[] key = new byte[state.length];
+		nextBytes(key);
+		child.setSeed(key);
+		return child;
+	}
+	
+	/**
+	 * fill a buffer by copying runs of bytes directly from the state.
+	 * 
+	 * @param buffer buffer to fill
+	 */
+	@Override
+	public synchronized void fill(final ByteBuffer buffer) {
+		
+		while (buffer.hasRemaining()) {
+			
+			if (index >= state.length) {
+				updateState();
+			}
+			
+			final int count = Math.min(state.length - index, buffer.remaining());
+			buffer.put(state, index, count);
+			index += count;
+		}
+	}
 
 }
@@ -1,8 +1,14 @@
 package prng;
 
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 /**
  * abstract class with base functions for extended Random
  * 
@@ -30,7 +36,6 @@ public abstract class ExtendedRandom extends Random {
 
 
 	private static final long serialVersionUID = 4705969117250773525L;
-	long calls = 0;
 	
 	// used by those subclasses that use a long seed.  Ignored if not needed.
 	protected long seed = -1;
@@ -48,6 +53,59 @@ public abstract class ExtendedRandom extends Random {
 		setSeed(bytesToLong(seed));
 	};
 	
+	/**
+	 * mix more entropy into the current state. Unlike setSeed this keeps what is already in
+	 * the state, needs no warm up, and takes time proportional to the input, so small amounts
+	 * can be added often. The default mixes each 8 bytes of input into the long seed; 
+	 * generators with more state override this.
+	 * 
+	 * @param input entropy, read from its position to its limit
+	 */
+	public synchronized void absorb(final ByteBuffer input) {
+		while (input.hasRemaining()) {
+			seed = mix(seed ^ nextWord(input));
+		}
+	}
+	
+	/**
+	 * mix more entropy into the current state
+	 * 
+	 * @param input entropy
+	 */
+	public void absorb(final byte[] input) {
+		absorb(ByteBuffer.wrap(input));
+	}
+	
+	/**
+	 * read the next 8 bytes of input, or what is left if less.
+	 * 
+	 * @param input input buffer
+	 * @return input bytes as a long
+	 */
+	static long nextWord(final ByteBuffer input) {
+		
+		if (input.remaining() >= Long.BYTES) return input.getLong();
+		
+		long word = 0;
+		while (input.hasRemaining()) {
+			word = word << 8 | (input.get() & 0xFF);
+		}
+		return word;
+	}
+	
+	/**
+	 * the SplitMix64 finalizer. It is a bijection, so mixing a value with it loses none 
+	 * of the entropy of the value.
+	 * 
+	 * @param z value to mix
+	 * @return mixed value
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
 	/**
 	 * return size of entropy pool in bytes
 	 * 
@@ -59,6 +117,36 @@ public abstract class ExtendedRandom extends Random {
 	
 	protected abstract int next(int bits);
 	
+	/* scale of a 53 bit integer to a double in [0, 1) */
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+	
+	/**
+	 * return 64 random bits. The default combines two calls to next(32) the way
+	 * Random.nextLong() does. Generators that compute 64 bit values override this to
+	 * return the whole value from one step instead of discarding half of it.
+	 * 
+	 * @return random long
+	 */
+	protected long nextLong64() {
+		return ((long) next(32) << 32) + next(32);
+	}
+	
+	/**
+	 * random long, from a single call to nextLong64().
+	 */
+	@Override
+	public long nextLong() {
+		return nextLong64();
+	}
+	
+	/**
+	 * random double in [0, 1) made from the top 53 bits of a single call to nextLong64().
+	 */
+	@Override
+	public double nextDouble() {
+		return (nextLong64() >>> 11) * DOUBLE_UNIT;
+	}
+	
 	public ExtendedRandom(long seed) {
 		setSeed(seed);
 	}
@@ -68,22 +156,350 @@ public abstract class ExtendedRandom extends Random {
 	}
 	
 	
-	int[] getSourceCounts() {
-		return new int[1];
+	/*
+	 * fixed value for the long seed before seeding. It is odd so that seeds made from
+	 * hashes with many low zero bits do not start a generator at zero.
+	 */
+	private static final long INITIAL_SEED = 0x9E3779B97F4A7C15L;
+	
+	/**
+	 * clear any state that the constructor derived from the clock, so that the state
+	 * after setSeed(byte[]) depends only on the seed bytes.
+	 */
+	void clearState() {
+		seed = INITIAL_SEED;
+	}
+	
+	/**
+	 * return a new generator of the same kind, seeded from the output of this one. Like
+	 * SplittableRandom.split(), the child is independent of this generator afterwards and 
+	 * can be handed to another thread, and the child depends only on the state of this
+	 * generator when it was split. Generators with more state than a long override this.
+	 * 
+	 * @return new generator
+	 */
+	public ExtendedRandom split() {
+		
+		final ExtendedRandom child = newInstance();
+		child.clearState();
+		child.setSeed(nextLong());
+		return child;
+	}
+	
+	/**
+	 * create a new instance of this class with its no argument constructor
+	 * 
+	 * @return new generator
+	 */
+	ExtendedRandom newInstance() {
+		
+		try {
+			final Constructor<? extends ExtendedRandom> constructor = getClass().getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor.newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("can not split " + getClass().getName(), e);
+		}
+	}
+	
+	/**
+	 * check the range for a bounded stream
+	 * 
+	 * @param origin least value
+	 * @param bound upper bound (exclusive)
+	 */
+	private static void checkRange(final double origin, final double bound) {
+		if (!(origin < bound)) throw new IllegalArgumentException("bound must be greater than origin");
+	}
+	
+	/**
+	 * stream of random integers. The stream splits this generator when it is split, so
+	 * parallel streams do not share a generator. 
+	 */
+	@Override
+	public IntStream ints(final long streamSize) {
+		return RandomStreams.ints(this, streamSize, Integer.MAX_VALUE, 0);
+	}
+	
+	@Override
+	public IntStream ints() {
+		return ints(Long.MAX_VALUE);
+	}
+	
+	@Override
+	public IntStream ints(final long streamSize, final int origin, final int bound) {
+		checkRange(origin, bound);
+		return RandomStreams.ints(this, streamSize, origin, bound);
+	}
+	
+	@Override
+	public IntStream ints(final int origin, final int bound) {
+		return ints(Long.MAX_VALUE, origin, bound);
+	}
+	
+	/**
+	 * stream of random longs. The stream splits this generator when it is split, so
+	 * parallel streams do not share a generator. 
+	 */
+	@Override
+	public LongStream longs(final long streamSize) {
+		return RandomStreams.longs(this, streamSize, Long.MAX_VALUE, 0L);
+	}
+	
+	@Override
+	public LongStream longs() {
+		return longs(Long.MAX_VALUE);
+	}
+	
+	@Override
+	public LongStream longs(final long streamSize, final long origin, final long bound) {
+		if (origin >= bound) throw new IllegalArgumentException("bound must be greater than origin");
+		return RandomStreams.longs(this, streamSize, origin, bound);
+	}
+	
+	@Override
+	public LongStream longs(final long origin, final long bound) {
+		return longs(Long.MAX_VALUE, origin, bound);
+	}
+	
+	/**
+	 * stream of random doubles. The stream splits this generator when it is split, so
+	 * parallel streams do not share a generator. 
+	 */
+	@Override
+	public DoubleStream doubles(final long streamSize) {
+		return RandomStreams.doubles(this, streamSize, Double.MAX_VALUE, 0.0);
+	}
+	
+	@Override
+	public DoubleStream doubles() {
+		return doubles(Long.MAX_VALUE);
+	}
+	
+	@Override
+	public DoubleStream doubles(final long streamSize, final double origin, final double bound) {
+		checkRange(origin, bound);
+		return RandomStreams.doubles(this, streamSize, origin, bound);
+	}
+	
+	@Override
+	public DoubleStream doubles(final double origin, final double bound) {
+		return doubles(Long.MAX_VALUE, origin, bound);
+	}
+	
+	long[] getSourceCounts() {
+		return new long[1];
 	}
 	/**
-	 * count calls to this rng.
-	 * @return number of times this generator was called.
+	 * unbiased random value in [0, range) using Lemire's multiply and shift method. The
+	 * high half of the product of a random 32 bit value and the range is the result, and
+	 * a draw is only repeated in the rare case the low half falls in the small biased
+	 * region, so nearly every value costs a single call to next(32).
+	 * 
+	 * @param range size of the range, from 1 to 2^32
+	 * @return random value in [0, range)
 	 */
-	public long getCalls() {
-		return calls;
+	private final long boundedNext32(final long range) {
+		
+		long product = (next(32) & 0xFFFFFFFFL) * range;
+		long low = product & 0xFFFFFFFFL;
+		
+		if (low < range) {
+			// 2^32 mod range values of the low half would bias the result
+			final long threshold = (0x100000000L - range) % range;
+			while (low < threshold) {
+				product = (next(32) & 0xFFFFFFFFL) * range;
+				low = product & 0xFFFFFFFFL;
+			}
+		}
+		return product >>> 32;
 	}
 	
 	/**
-	 * increment calls
+	 * unbiased random value in [0, range) using Lemire's method on 64 bit values, each
+	 * from a single call to nextLong64().
+	 * 
+	 * @param range size of the range as an unsigned value, not zero
+	 * @return random value in [0, range) as an unsigned value
+	 */
+	private final long boundedNext64(final long range) {
+		
+		long value = nextLong64();
+		long low = value * range;
+		
+		if (Long.compareUnsigned(low, range) < 0) {
+			// 2^64 mod range values of the low half would bias the result
+			final long threshold = Long.remainderUnsigned(-range, range);
+			while (Long.compareUnsigned(low, threshold) < 0) {
+				value = nextLong64();
+				low = value * range;
+			}
+		}
+		return unsignedMultiplyHigh(value, range);
+	}
+	
+	/**
+	 * high 64 bits of the unsigned 128 bit product
+	 * 
+	 * @param x first value
+	 * @param y second value
+	 * @return high half of x * y as unsigned values
+	 */
+	static long unsignedMultiplyHigh(final long x, final long y) {
+		return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+	}
+	
+	/**
+	 * unbiased random integer in [0, bound)
+	 * 
+	 * @param bound upper bound (exclusive), must be positive
+	 */
+	@Override
+	public int nextInt(final int bound) {
+		if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+		return (int) boundedNext32(bound);
+	}
+	
+	/**
+	 * unbiased random integer in [origin, bound)
+	 * 
+	 * @param origin least value
+	 * @param bound upper bound (exclusive), must be greater than origin
+	 */
+	@Override
+	public int nextInt(final int origin, final int bound) {
+		if (origin >= bound) throw new IllegalArgumentException("bound must be greater than origin");
+		return origin + (int) boundedNext32((long) bound - origin);
+	}
+	
+	/**
+	 * unbiased random long in [0, bound)
+	 * 
+	 * @param bound upper bound (exclusive), must be positive
+	 */
+	@Override
+	public long nextLong(final long bound) {
+		if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+		return boundedNext64(bound);
+	}
+	
+	/**
+	 * unbiased random long in [origin, bound)
+	 * 
+	 * @param origin least value
+	 * @param bound upper bound (exclusive), must be greater than origin
+	 */
+	@Override
+	public long nextLong(final long origin, final long bound) {
+		if (origin >= bound) throw new IllegalArgumentException("bound must be greater than origin");
+		return origin + boundedNext64(bound - origin);
+	}
+	
+	/**
+	 * fill an array with unbiased random integers in [origin, bound).
+	 * 
+	 * @param values array to fill
+	 * @param origin least value
+	 * @param bound upper bound (exclusive), must be greater than origin
+	 */
+	public synchronized void fill(final int[] values, final int origin, final int bound) {
+		
+		if (origin >= bound) throw new IllegalArgumentException("bound must be greater than origin");
+		final long range = (long) bound - origin;
+		
+		for (int i = 0; i < values.length; i++) {
+			values[i] = origin + (int) boundedNext32(range);
+		}
+	}
+	
+	/**
+	 * fill an array with unbiased random longs in [origin, bound).
+	 * 
+	 * @param values array to fill
+	 * @param origin least value
+	 * @param bound upper bound (exclusive), must be greater than origin
+	 */
+	public synchronized void fill(final long[] values, final long origin, final long bound) {
+		
+		if (origin >= bound) throw new IllegalArgumentException("bound must be greater than origin");
+		final long range = bound - origin;
+		
+		for (int i = 0; i < values.length; i++) {
+			values[i] = origin + boundedNext64(range);
+		}
+	}
+	
+	/**
+	 * fill an array with random integers. The values are the same as calling next(32)
+	 * for each element. Generators that produce their numbers in blocks override this
+	 * to copy a block at a time instead of making a call for each value.
+	 * 
+	 * @param values array to fill
+	 */
+	public synchronized void fill(final int[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = next(32);
+		}
+	}
+	
+	/**
+	 * fill an array with random long values, as returned by nextLong64().
+	 * 
+	 * @param values array to fill
+	 */
+	public synchronized void fill(final long[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = nextLong64();
+		}
+	}
+	
+	/**
+	 * fill an array with random doubles in the range [0, 1), as returned by nextDouble().
+	 * 
+	 * @param values array to fill
+	 */
+	public synchronized void fill(final double[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = nextDouble();
+		}
+	}
+	
+	/**
+	 * fill the remaining bytes of a buffer with random bytes. Works for heap buffers
+	 * as well as direct and memory mapped buffers, which is the way to fill memory
+	 * outside the heap.  The bytes are the same as nextBytes() would produce, and the
+	 * buffer position is advanced to the limit.
+	 * 
+	 * @param buffer buffer to fill
+	 */
+	public synchronized void fill(final ByteBuffer buffer) {
+		
+		// nextBytes uses the low byte of each int first
+		final ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		
+		while (buffer.remaining() >= 4) {
+			buffer.putInt(next(32));
+		}
+		
+		if (buffer.hasRemaining()) {
+			for (int rnd = next(32); buffer.hasRemaining(); rnd >>= 8) {
+				buffer.put((byte) rnd);
+			}
+		}
+		
+		buffer.order(order);
+	}
+	
+	/**
+	 * generate random bytes using the bulk fill so that there is a single call for the array
+	 * rather than one for every four bytes.
+	 * 
+	 * @param bytes array to fill with random bytes
 	 */
-	void incCalls() {
-		calls++;
+	@Override
+	public void nextBytes(final byte[] bytes) {
+		fill(ByteBuffer.wrap(bytes));
 	}
 	
 	/**
@@ -132,7 +548,7 @@ public abstract class ExtendedRandom extends Random {
 			
 			// pack each 8 bytes from the string into a long
 			for (int j = 0; j < bytesPerValue && byteCount < bytes.length; j++) {
-				value |= ((long)(bytes[byteCount++]) << (bytesPerValue * j));
+				value |= (bytes[byteCount++] & 0xFFL) << (8 * j);
 			}
 			
 			result[i] = value;
@@ -174,7 +590,7 @@ public abstract class ExtendedRandom extends Random {
 			
 			// pack each 8 bytes from the string into a long
 			for (int j = 0; j < bytesPerValue && byteCount < bytes.length; j++) {
-				value |= ((int)(bytes[byteCount++]) << (bytesPerValue * j));
+				value |= (bytes[byteCount++] & 0xFF) << (8 * j);
 			}
 			
 			result[i] = value;
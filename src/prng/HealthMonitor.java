@@ -0,0 +1,317 @@
+package prng;
+
+/**
+ * online health tests for the output of a MultiRandom, after SP 800-90B section 4.4. Each
+ * source and the combined output have a repetition count test and an adaptive proportion
+ * test, and optionally monobit, runs and chi-square tests over windows of samples. Only
+ * one in sampleRate draws of each source, and of the combined output whichever source it
+ * came from, is tested, so the cost on the generator is two masked counter checks per
+ * draw, and the tests run on a small fraction of the draws.
+ *
+ * Failures are counted here and in the metrics of the generator, and passed to the
+ * listener. The default listener does nothing more; REPORT prints them for debugging.
+ *
+ * The cutoffs assume at least 8 bits of min-entropy in each 32 bit sample, far less than
+ * a healthy generator has, and give a false alarm probability of about 2^-20 per test.
+ * They catch a source that is stuck or cycles through a few values, and the window tests
+ * catch a biased or short cycle.
+ *
+ * A monitor keeps state for one generator, and is called with its lock held.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class HealthMonitor {
+
+	/**
+	 * receives health test failures
+	 */
+	public interface Listener {
+		/**
+		 * a health test failed
+		 *
+		 * @param random generator
+		 * @param source index of the failing source, or -1 for the combined output
+		 * @param test name of the test
+		 */
+		void failed(MultiRandom random, int source, String test);
+	}
+
+	/* listener that ignores failures, which are still counted */
+	public static final Listener IGNORE = (random, source, test) -> { };
+
+	/* listener that reports failures on standard error, for debugging */
+	public static final Listener REPORT = (random, source, test) ->
+			System.err.println("health test " + test + " failed for "
+					+ (source < 0 ? "combined output" : "source " + source + " " + random.getClasses()[source].getSimpleName()));
+
+	final static int DEFAULT_SAMPLE_RATE = 64;
+
+	/* assumed min-entropy in bits per sample, and false alarm probability */
+	final static int ENTROPY = 8;
+	final static double ALPHA = 0x1.0p-20;
+
+	/* repetition count test cutoff, 1 + ceil(20 / H) */
+	final static int RCT_CUTOFF = 1 + (20 + ENTROPY - 1) / ENTROPY;
+
+	final static int APT_WINDOW = 512;
+	final static int APT_CUTOFF = aptCutoff(APT_WINDOW, 1.0 / (1 << ENTROPY), ALPHA);
+
+	/* samples in a window of the monobit, runs and chi-square tests */
+	final static int WINDOW = 1024;
+	/* standard deviations for a failure of the window tests */
+	final static double WINDOW_Z = 6;
+
+	private final int sampleMask;
+	private final boolean extended;
+	private final boolean disableFailing;
+	private final Listener listener;
+
+	/* per channel state, the sources and then the combined output */
+	private int[] rctValue;
+	private int[] rctCount;
+	private int[] aptBase;
+	private int[] aptCount;
+	private int[] aptSamples;
+	private long[] failures;
+
+	private int[] windowSamples;
+	private int[] ones;
+	private int[] transitions;
+	private int[] lastBit;
+	private int[][] histogram;
+
+	/**
+	 * monitor with the default rate, the basic tests only, counting failures without
+	 * disabling sources
+	 */
+	public HealthMonitor() {
+		this(DEFAULT_SAMPLE_RATE, false, false, IGNORE);
+	}
+
+	/**
+	 * create a monitor
+	 *
+	 * @param sampleRate test one in this many draws of each source, a power of two
+	 * @param extended also run the monobit, runs and chi-square tests
+	 * @param disableFailing stop selecting a source that fails, as long as another is left
+	 * @param listener receives failures
+	 */
+	public HealthMonitor(final int sampleRate, final boolean extended, final boolean disableFailing,
+			final Listener listener) {
+
+		if (Integer.bitCount(sampleRate) != 1) throw new IllegalArgumentException("sample rate must be a power of two");
+
+		this.sampleMask = sampleRate - 1;
+		this.extended = extended;
+		this.disableFailing = disableFailing;
+		this.listener = listener;
+	}
+
+	/**
+	 * smallest count of the first value of a window that fails the adaptive proportion test.
+	 *
+	 * @param window samples in the window
+	 * @param p probability of a sample equal to the first
+	 * @param alpha false alarm probability
+	 * @return cutoff, including the first sample
+	 */
+	static int aptCutoff(final int window, final double p, final double alpha) {
+
+		// the other samples match the first with a binomial distribution
+		final int n = window - 1;
+		double term = Math.pow(1 - p, n);
+		double cdf = term;
+		int k = 0;
+
+		while (1 - cdf > alpha && k < n) {
+			term *= (n - k) / (double) (k + 1) * p / (1 - p);
+			k++;
+			cdf += term;
+		}
+		return k + 2;
+	}
+
+	/**
+	 * size the state for a number of sources. Called when attached to a generator.
+	 *
+	 * @param sources number of sources
+	 */
+	void reset(final int sources) {
+
+		final int channels = sources + 1;
+		rctValue = new int[channels];
+		rctCount = new int[channels];
+		aptBase = new int[channels];
+		aptCount = new int[channels];
+		aptSamples = new int[channels];
+		failures = new long[channels];
+
+		if (extended) {
+			windowSamples = new int[channels];
+			ones = new int[channels];
+			transitions = new int[channels];
+			lastBit = new int[channels];
+			histogram = new int[channels][256];
+		}
+	}
+
+	int getSampleMask() {
+		return sampleMask;
+	}
+
+	boolean isDisableFailing() {
+		return disableFailing;
+	}
+
+	Listener getListener() {
+		return listener;
+	}
+
+	/**
+	 * number of failures of a source
+	 *
+	 * @param source source index, or -1 for the combined output
+	 * @return failures
+	 */
+	public long getFailures(final int source) {
+		return failures[source < 0 ? failures.length - 1 : source];
+	}
+
+	/**
+	 * test a sample from a source
+	 *
+	 * @param source index of the source
+	 * @param value sample
+	 * @return name of a failed test for the source, or null
+	 */
+	String sample(final int source, final int value) {
+		return test(source, value);
+	}
+
+	/**
+	 * test a sample of the combined output, taken from the draws of the generator
+	 * independently of the source samples
+	 *
+	 * @param value sample
+	 * @return name of a failed test, or null
+	 */
+	String sampleCombined(final int value) {
+		return test(failures.length - 1, value);
+	}
+
+	/**
+	 * run the tests on one channel
+	 *
+	 * @param channel channel
+	 * @param value sample
+	 * @return name of a failed test, or null
+	 */
+	private String test(final int channel, final int value) {
+
+		String failed = null;
+
+		// repetition count test
+		if (value == rctValue[channel] && rctCount[channel] > 0) {
+			if (++rctCount[channel] >= RCT_CUTOFF) failed = "repetition count";
+		} else {
+			rctValue[channel] = value;
+			rctCount[channel] = 1;
+		}
+
+		// adaptive proportion test
+		if (aptSamples[channel] == 0) {
+			aptBase[channel] = value;
+			aptCount[channel] = 1;
+		} else if (value == aptBase[channel] && ++aptCount[channel] >= APT_CUTOFF) {
+			failed = "adaptive proportion";
+		}
+		if (++aptSamples[channel] == APT_WINDOW) aptSamples[channel] = 0;
+
+		if (extended && failed == null) failed = window(channel, value);
+
+		if (failed != null) {
+			failures[channel]++;
+			clear(channel);
+		}
+		return failed;
+	}
+
+	/**
+	 * add a sample to the window tests, and evaluate them when the window is full
+	 *
+	 * @param channel channel
+	 * @param value sample
+	 * @return name of a failed test, or null
+	 */
+	private String window(final int channel, final int value) {
+
+		ones[channel] += Integer.bitCount(value);
+		// bit changes inside the value and from the last bit of the previous value
+		transitions[channel] += Integer.bitCount(value ^ (value >>> 1 | lastBit[channel] << 31));
+		lastBit[channel] = value & 1;
+
+		final int[] counts = histogram[channel];
+		counts[value & 0xFF]++;
+		counts[(value >>> 8) & 0xFF]++;
+		counts[(value >>> 16) & 0xFF]++;
+		counts[value >>> 24]++;
+
+		if (++windowSamples[channel] < WINDOW) return null;
+
+		final double bits = 32.0 * WINDOW;
+		String failed = null;
+
+		if (Math.abs(2.0 * ones[channel] - bits) > WINDOW_Z * Math.sqrt(bits)) {
+			failed = "monobit";
+		} else if (Math.abs(2.0 * transitions[channel] - bits) > WINDOW_Z * Math.sqrt(bits)) {
+			failed = "runs";
+		} else {
+			final double expected = 4.0 * WINDOW / counts.length;
+			double chi = 0;
+			for (final int count : counts) {
+				chi += (count - expected) * (count - expected) / expected;
+			}
+			final int freedom = counts.length - 1;
+			if (chi > freedom + WINDOW_Z * Math.sqrt(2.0 * freedom)) failed = "chi-square";
+		}
+
+		clearWindow(channel);
+		return failed;
+	}
+
+	/**
+	 * restart the tests of a channel after a failure
+	 *
+	 * @param channel channel
+	 */
+	private void clear(final int channel) {
+		rctCount[channel] = 0;
+		aptSamples[channel] = 0;
+		if (extended) clearWindow(channel);
+	}
+
+	private void clearWindow(final int channel) {
+		windowSamples[channel] = 0;
+		ones[channel] = 0;
+		transitions[channel] = 0;
+		java.util.Arrays.fill(histogram[channel], 0);
+	}
+}
@@ -1,5 +1,6 @@
 package prng;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -181,7 +182,7 @@ public class MersenneTwister extends ExtendedRandom {
 
 	private int mt[] = new int[N]; // the array for the state vector
 	private int mti; // mti==N+1 means mt[N] is not initialized
-	private int mag01[] = new int[] { 0, MATRIX_A };
+	private int tempered[] = new int[N]; // tempered output of the current state vector
 
 	// a good initial seed (of int size, though stored in a long)
 	// private static final long GOOD_SEED = 4357;
@@ -237,6 +238,25 @@ public class MersenneTwister extends ExtendedRandom {
 	public void setSeed(final byte[] array) {
 		setSeed(bytesToIntArray(array));
 	}
+	
+	/**
+	 * xor the mixed input into the state vector, and regenerate the block so that the
+	 * next outputs already depend on it.
+	 * 
+	 * @param input entropy
+	 */
+	@Override
+	public synchronized void absorb(final ByteBuffer input) {
+		
+		int i = 0;
+		while (input.hasRemaining()) {
+			final long word = mix(nextWord(input));
+			mt[i] ^= (int) (word >>> 32);
+			mt[i + 1] ^= (int) word;
+			i = (i + 2) % N;
+		}
+		mti = N;
+	}
 
 	
 	/**
@@ -299,41 +319,105 @@ public class MersenneTwister extends ExtendedRandom {
 	
 	
 	/**
-	 * Returns an integer with <i>bits</i> bits filled with a random number.
+	 * generate N words of the state vector at one time, and temper the whole block
+	 * into the output array. The conditional xor with MATRIX_A is done with a mask
+	 * rather than a table lookup, and tempering runs as a separate loop over the 
+	 * block, so that both loops are simple enough for the JIT to vectorize.
 	 */
-	protected synchronized final int next(final int bits) {
+	private final void generate() {
 
 		int y;
+		int kk;
+		final int[] mt = this.mt; // locals are slightly faster
+
+		for (kk = 0; kk < N - M; kk++) {
+			y = (mt[kk] & UPPER_MASK) | (mt[kk + 1] & LOWER_MASK);
+			mt[kk] = mt[kk + M] ^ (y >>> 1) ^ (-(y & 0x1) & MATRIX_A);
+		}
+
+		for (; kk < N - 1; kk++) {
+			y = (mt[kk] & UPPER_MASK) | (mt[kk + 1] & LOWER_MASK);
+			mt[kk] = mt[kk + (M - N)] ^ (y >>> 1) ^ (-(y & 0x1) & MATRIX_A);
+		}
+
+		y = (mt[N - 1] & UPPER_MASK) | (mt[0] & LOWER_MASK);
+		mt[N - 1] = mt[M - 1] ^ (y >>> 1) ^ (-(y & 0x1) & MATRIX_A);
+
+		final int[] tempered = this.tempered;
+		
+		for (kk = 0; kk < N; kk++) {
+			y = mt[kk];
+			y ^= y >>> 11; // TEMPERING_SHIFT_U(y)
+			y ^= (y << 7) & TEMPERING_MASK_B; // TEMPERING_SHIFT_S(y)
+			y ^= (y << 15) & TEMPERING_MASK_C; // TEMPERING_SHIFT_T(y)
+			y ^= (y >>> 18); // TEMPERING_SHIFT_L(y)
+			tempered[kk] = y;
+		}
+
+		mti = 0;
+	}
+
+	/**
+	 * Returns an integer with <i>bits</i> bits filled with a random number.
+	 */
+	protected synchronized final int next(final int bits) {
 
 		if (mti >= N) { // generate N words at one time
+			generate();
+		}
 
-			int kk;
-			final int[] mt = this.mt; // locals are slightly faster
-			final int[] mag01 = this.mag01; // locals are slightly faster
+		return tempered[mti++] >>> (32 - bits); // hope that's right!
+	}
 
-			for (kk = 0; kk < N - M; kk++) {
-				y = (mt[kk] & UPPER_MASK) | (mt[kk + 1] & LOWER_MASK);
-				mt[kk] = mt[kk + M] ^ (y >>> 1) ^ mag01[y & 0x1];
-			}
+	/**
+	 * block mode: copy tempered words into an array, a whole generated block at a time.
+	 * Any length may be requested; lengths that are a multiple of 624 with no partly
+	 * used block pending copy complete blocks. The values are the same as repeated calls
+	 * to next(32).
+	 * 
+	 * @param values array to fill
+	 * @param offset first index to fill
+	 * @param length number of values
+	 */
+	public synchronized void nextBlock(final int[] values, final int offset, final int length) {
+
+		if (offset < 0 || length < 0 || offset + length > values.length)
+			throw new IndexOutOfBoundsException("offset " + offset + " length " + length);
 
-			for (; kk < N - 1; kk++) {
-				y = (mt[kk] & UPPER_MASK) | (mt[kk + 1] & LOWER_MASK);
-				mt[kk] = mt[kk + (M - N)] ^ (y >>> 1) ^ mag01[y & 0x1];
+		int filled = 0;
+
+		while (filled < length) {
+
+			if (mti >= N) {
+				generate();
 			}
 
-			y = (mt[N - 1] & UPPER_MASK) | (mt[0] & LOWER_MASK);
-			mt[N - 1] = mt[M - 1] ^ (y >>> 1) ^ mag01[y & 0x1];
+			final int count = Math.min(N - mti, length - filled);
+			System.arraycopy(tempered, mti, values, offset + filled, count);
 
-			mti = 0;
+			mti += count;
+			filled += count;
 		}
+	}
 
-		y = mt[mti++];
-		y ^= y >>> 11; // TEMPERING_SHIFT_U(y)
-		y ^= (y << 7) & TEMPERING_MASK_B; // TEMPERING_SHIFT_S(y)
-		y ^= (y << 15) & TEMPERING_MASK_C; // TEMPERING_SHIFT_T(y)
-		y ^= (y >>> 18); // TEMPERING_SHIFT_L(y)
+	/**
+	 * split, with the child seeded from a full state vector of words from this generator.
+	 */
+	@Override
+	public MersenneTwister split() {
+		
+		final int[] key = new int[N];
+		nextBlock(key, 0, N);
+		return new MersenneTwister(key);
+	}
 
-		return y >>> (32 - bits); // hope that's right!
+	/**
+	 * fill an array with tempered words using block mode.
+	 * 
+	 * @param values array to fill
+	 */
+	public void fill(final int[] values) {
+		nextBlock(values, 0, values.length);
 	}
 
 }
@@ -1,9 +1,12 @@
 package prng;
 
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Multirandom uses a variable number of random number generators, and for each call for a random number one of the generators
@@ -19,6 +22,13 @@ import java.util.Random;
  * the string. The string byte array is converted to a array of long values. Thus the variable amount of state held increases
  * the entropy of the random numbers generated as longer keys are used.
  * 
+ * Reseeding with setSeed(byte[]) builds a complete new set of generators from the new seed alone, and swaps
+ * it in when it is ready, so the same seed always gives the same numbers. reseed(byte[]) does the same with the
+ * key followed by bytes from a generator kept aside for reseeding, so the new state also depends on the old one.
+ * Readers keep using the old set meanwhile and do not wait for either. The reseed still competes with them for
+ * the CPU, so without a spare core their tail latency rises while it runs. setSeed(long) reseeds the current
+ * generators in place, as Random.setSeed does, without a warm up.
+ * 
  * 
  *   copyright 2019 Matthew Clark
  
@@ -46,16 +56,43 @@ public class MultiRandom extends ExtendedRandom {
 	private static final long serialVersionUID = -2821802106204980544L;
 	
 	/*
-	 * mask for absolute value of an integer.
-	 * value & signMask makes it positive.
+	 * random number generators and the state used to select between them. A reseed
+	 * builds a complete new set and replaces this one, so readers do not wait while it is built.
 	 */
-	final int signMask = 0x7FFFFFFF;
-
-	/*
-	 * array of random number generators.  
+	private volatile SourceSet current = null;
+	
+	/* draws of each source, and the timing samples */
+	private RandomMetrics metrics = null;
+	
+	/* 
+	 * draws of each source, and 64 bit draws, not yet added to the metrics. They also
+	 * choose the draws that are timed and health tested. Only the low bits matter, so
+	 * overflow is harmless.
 	 */
-	private ExtendedRandom[] sources = null;
-	private int[] sourceCounts = null;
+	private int[] sampleTicks = null;
+	private int longTicks = 0;
+	
+	/* calls counted outside the lock, to choose the lock waits to time. Lost updates are harmless. */
+	private int lockTicks = 0;
+	
+	/* indices of the sources that are selected, all of them unless health tests disabled some */
+	private volatile int[] active = null;
+	
+	/* health tests, and the mask of the sample ticks at which a draw is tested */
+	private HealthMonitor health = null;
+	private int healthMask = -1;
+	
+	/* draws of the combined output, to choose the ones that are health tested */
+	private int combinedTicks = 0;
+	
+	/* serializes reseeds. An array, so that it can be serialized. */
+	private final Object reseedLock = new Object[0];
+	
+	/* bytes drawn from the current reseed generator to mix into a new seed by reseed() */
+	final static int MIX_SIZE = 32;
+	
+	/* digest of absorbed entropy that is mixed into the selection state */
+	private final static String ABSORB_DIGEST = "SHA-256";
 	
 	/*
 	 * class of random number generator to use. If one has other algorithms one can
@@ -94,18 +131,19 @@ public class MultiRandom extends ExtendedRandom {
 
 
 	/*
-	 * internal state. used to select the next random number generator to use
+	 * run the generators for a while after seeding. Not needed when the key is
+	 * already strong random bytes.
 	 */
-	private int state = 0;
+	private final boolean warmUp;
 	
-	long entropyUpdates = 0;
+	private final AtomicLong entropyUpdates = new AtomicLong();
 	
 	/**
 	 * return the size of the entropy bool for this method.
 	 */
 	public int entropySize() {
 		int length = 0;
-		for (ExtendedRandom r : sources) {
+		for (ExtendedRandom r : current.sources) {
 			length += r.entropySize();
 		}
 		return length;
@@ -116,19 +154,41 @@ public class MultiRandom extends ExtendedRandom {
 	 * @return number of times entropy was added
 	 */
 	public long getEntropyUpdates() {
-		return entropyUpdates;
+		return entropyUpdates.get();
 	}
 
 	/**
 	 * get counts of each time one of the prng's are used
 	 */
-	public int[] getSourceCounts() {
-		return sourceCounts;
+	public long[] getSourceCounts() {
+		return metrics.getSourceDraws(sampleTicks);
+	}
+	
+	/**
+	 * number of draws from the sources
+	 * @return draws
+	 */
+	public long getCalls() {
+		return metrics.getDraws(sampleTicks);
+	}
+	
+	/**
+	 * read all the metrics at once. The lock is held so the draw counts agree.
+	 * 
+	 * @return snapshot of the metrics
+	 */
+	public synchronized RandomMetrics.Snapshot getMetrics() {
+		
+		final String[] names = new String[randomClass.length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = randomClass[i].getName();
+		}
+		return metrics.snapshot(names, sampleTicks, longTicks);
 	}
 	
 	
 	public Class<? extends ExtendedRandom>[] getClasses() {
-		return defaultRandomGeneratorClasses;
+		return randomClass;
 	}
 	/**
 	 * default constructor. Uses DEFAULT_SOURCES random number generators.
@@ -173,15 +233,95 @@ public class MultiRandom extends ExtendedRandom {
 	 * @param array of PRNG's
 	 */
 	public MultiRandom(final byte[] key, Class<? extends ExtendedRandom>[] randomGenerators) {
+		this(key, randomGenerators, true);
+	}
+	
+	/**
+	 * generate sequence based on the key with the default generators, optionally without
+	 * the warm up run.
+	 * 
+	 * @param key byte array used as key.
+	 * @param warmUp true to run the generators for a while after each seeding
+	 */
+	protected MultiRandom(final byte[] key, final boolean warmUp) {
+		this(key, defaultRandomGeneratorClasses, warmUp);
+	}
+	
+	/**
+	 * generate sequence based on the key, optionally without the warm up run.  Skipping the
+	 * warm up makes construction and reseeding much cheaper, and is only suitable when the
+	 * key itself is strong random data, such as bytes from another generator.
+	 * 
+	 * @param key byte array used as key.
+	 * @param randomGenerators array of PRNG's
+	 * @param warmUp true to run the generators for a while after each seeding
+	 */
+	protected MultiRandom(final byte[] key, Class<? extends ExtendedRandom>[] randomGenerators, final boolean warmUp) {
 		
+		this.warmUp = warmUp;
 		randomClass = randomGenerators;
-		sources = new ExtendedRandom[randomClass.length];
-		sourceCounts = new int[randomClass.length];
+		metrics = new RandomMetrics(randomClass.length);
+		sampleTicks = new int[randomClass.length];
+		active = allSources();
+		current = init(key);
+	}
+	
+
+	
+	/**
+	 * construct a child generator for split(), from splits of each source.
+	 * 
+	 * @param parent generator to split
+	 */
+	private MultiRandom(final MultiRandom parent) {
+		
+		warmUp = parent.warmUp;
+		randomClass = parent.randomClass;
+		metrics = new RandomMetrics(randomClass.length);
+		sampleTicks = new int[randomClass.length];
+		active = allSources();
+		
+		final ExtendedRandom[] sources = new ExtendedRandom[randomClass.length];
+		for (int i = 0; i < sources.length; i++) {
+			sources[i] = parent.current.sources[i].split();
+		}
+		current = new SourceSet(sources, parent.dispatch());
+		current.splitMixer();
+	}
+	
+	/**
+	 * split into an independent generator using the same classes of sources, each
+	 * source split from the matching source of this generator. This does not run
+	 * the warm up, so it costs one split per source.
+	 * 
+	 * @return new generator
+	 */
+	@Override
+	public synchronized MultiRandom split() {
+		return new MultiRandom(this);
+	}
 	
+	/**
+	 * create and initialize a new set of random number generators using the seeds provided. A 
+	 * separate random number generator will be created for each long seed.  If multiple random 
+	 * number algorithms are used even identical keys will produce good results since each value
+	 * will come from a different algorithm.
+	 * 
+	 * This only touches the new set, so it does not need the lock.
+	 * 
+	 * @param seeds long[] array of seeds.
+	 * @return new generators
+	 */
+	private SourceSet init(final byte[] seeds) {
+
+		final ExtendedRandom[] sources = new ExtendedRandom[randomClass.length];
+		
 		for (int i = 0; i < randomClass.length; i++) {
 			try {
 				// select which kind of random number generator to use
 				sources[i] = randomClass[i].newInstance();
+				// the key alone decides the starting state
+				sources[i].clearState();
 				
 			} catch (IllegalAccessException e) {
 				e.printStackTrace();
@@ -189,31 +329,18 @@ public class MultiRandom extends ExtendedRandom {
 				e.printStackTrace();
 			}
 		}
-		init(key);
-
-	}
-	
-
-	
-	/**
-	 * initialize the random number generators using the seeds provided. A separate random number
-	 * generator will be created for each long seed.  If multiple random number algorithms are used
-	 * even identical keys will produce good results since each value will come from a different
-	 * algorithm.
-	 * 
-	 * @param seeds long[] array of seeds.
-	 */
-	private void init(final byte[] seeds) {
-
 		
 		// set a fairly unique initial state based on the seed.  
 		//This is very significant to make sequences with 
 		//similar seed arrays result in very different sequences of numbers
-		state= Arrays.hashCode(seeds);
+		final SourceSet set = new SourceSet(sources, Arrays.hashCode(seeds));
 		
 		for (int i = 0; i < randomClass.length; i++) {
-			// initial seed for the generator
-			sources[i].setSeed(seeds);
+			// initial seed for the generator. The index keeps generators of the same class
+			// apart when the changes below bring short seeds back to an earlier value.
+			final byte[] key = Arrays.copyOf(seeds, seeds.length + 1);
+			key[seeds.length] = (byte) i;
+			sources[i].setSeed(key);
 			// change the seeds so that each prng has a different seed.  This is important
 			// because the same prng class can be used more than one time.
 			// the hash is different after the change so that the xor doesn't 
@@ -224,8 +351,10 @@ public class MultiRandom extends ExtendedRandom {
 			}
 		}
 		// generate some numbers to move from initial state
-		preRun();
-
+		if (warmUp) preRun(set);
+		set.splitMixer();
+		
+		return set;
 	}
 	
 	/**
@@ -233,82 +362,408 @@ public class MultiRandom extends ExtendedRandom {
 	 * 	in case the initial seeds are not very strong.  This process makes sure
      * that all prng's are not starting from the first number.
 	 * 
+	 * @param set generators to run
 	 */
-	private void preRun() {
+	private void preRun(final SourceSet set) {
 		// preRun depends on the state value so is not the same for every run.
-		final long initialRun = (state & 0xFFFF) + 1024 * randomClass.length;
+		final long initialRun = (set.state & 0xFFFF) + 1024 * randomClass.length;
+		final int[] all = allSources();
 		for (int i = 0; i < initialRun; i++) {
-			this.nextInt();
+			set.nextInt(set.select(all));
+		}
+	}
+	
+	/**
+	 * replace the generators with new ones seeded from the key and from bytes drawn
+	 * from the reseed generator of the current set, which readers never use, so a weak
+	 * key does not take the generator back to a known state. The new set is built and
+	 * warmed up without holding the lock, and published with a single volatile write, 
+	 * so readers continue with the old generators until then without waiting.
+	 * 
+	 * @param key new seed material
+	 */
+	public void reseed(final byte[] key) {
+		
+		final long start = System.nanoTime();
+		synchronized (reseedLock) {
+			
+			final byte[] mix = new byte[MIX_SIZE];
+			current.mixer.nextBytes(mix);
+			
+			final byte[] seeds = Arrays.copyOf(key, key.length + mix.length);
+			System.arraycopy(mix, 0, seeds, key.length, mix.length);
+			
+			current = init(seeds);
 		}
+		metrics.reseeded(System.nanoTime() - start);
+		entropyUpdates.incrementAndGet();
 	}
 	
+	/**
+	 * mix entropy into each of the current generators and into the selection state,
+	 * without building new generators. This waits for a reseed in progress, so the input
+	 * is not lost when it finishes.
+	 * 
+	 * @param input entropy
+	 */
+	@Override
+	public void absorb(final ByteBuffer input) {
+		
+		final long start = System.nanoTime();
+		final int mix = digest(input);
+		
+		synchronized (reseedLock) {
+			synchronized (this) {
+				final SourceSet set = current;
+				for (final ExtendedRandom source : set.sources) {
+					source.absorb(input.duplicate().order(input.order()));
+				}
+				set.state ^= mix;
+			}
+			current.mixer.absorb(input.duplicate().order(input.order()));
+			input.position(input.limit());
+		}
+		metrics.reseeded(System.nanoTime() - start);
+		entropyUpdates.incrementAndGet();
+	}
 	
 	/**
-	 * Alter the state of the system by adding entropy
+	 * digest the remaining bytes of a buffer, without consuming them
+	 * 
+	 * @param input bytes
+	 * @return first 32 bits of the digest
+	 */
+	private static int digest(final ByteBuffer input) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance(ABSORB_DIGEST);
+			digest.update(input.duplicate());
+			return ByteBuffer.wrap(digest.digest()).getInt();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	/**
+	 * Alter the state of the system by adding entropy. The new generators depend on the
+	 * seeds only. They are built without the lock and swapped in when ready.
 	 * @param seeds byte[] to add entropy to the system.
 	 */
 	public void setSeed(byte[] seeds) {
-		if (randomClass != null) init(seeds);
-		entropyUpdates++;
+		if (randomClass != null) {
+			final long start = System.nanoTime();
+			synchronized (reseedLock) {
+				current = init(seeds);
+			}
+			metrics.reseeded(System.nanoTime() - start);
+		}
+		entropyUpdates.incrementAndGet();
 	}
 	
 	
 	/**
-	 * seed seed with a single long
+	 * seed seed with a single long. The seed is mixed into the selection state, and one
+	 * source chosen by it seeds all the current sources in place, without a warm up.
 	 * @param seed set the seed
 	 * 
 	 */
 	public void setSeed(final long seed) {
 		
-		if (sources == null) {
+		if (current == null) {
 			super.setSeed(seed);
 			return;
 		}
-		/*
-		 * select one of the sources to generate
-		 * seeds for the other sources
-		 */
-		state= state ^ Long.valueOf(seed).hashCode();
-		
-		final int index = (int) ((state & signMask)  % sources.length);
-		final ExtendedRandom rand = sources[index];
 		
-		/*
-		 * set the seeds
-		 */
-		for (Random source : sources) {
-			source.setSeed(rand.nextLong());
+		synchronized (reseedLock) {
+			synchronized (this) {
+				final SourceSet set = current;
+				/*
+				 * select one of the sources to generate
+				 * seeds for the other sources
+				 */
+				set.state ^= Long.hashCode(seed);
+				final ExtendedRandom rand = set.sources[set.select(allSources())];
+				
+				/*
+				 * set the seeds
+				 */
+				for (final ExtendedRandom source : set.sources) {
+					source.setSeed(rand.nextLong());
+				}
+			}
 		}
 		super.setSeed(seed);
 	}
 	
 	/**
 	 * provides an integer from one of the random sources, chosen using
-	 * the state variable which is pseudorandom itself
-	 */
-	public synchronized final int nextInt() {
-		// select source
-		final int index = (int) ((state & signMask) % sources.length);
-		// get result from selected source
-		final int result = sources[index].nextInt();
-		
-		sourceCounts[index]++;  // collect stats on sources used
-		// update state by incrementing with result. the result is masked to be
-		// positive so that the average isn't zero because the average result is 0.
-		// this way it may increase and overflow to be negative at some point which 
-		// is ok because we force it to be positive above.
-		state += result & signMask;
+	 * the state variable which is pseudorandom itself. Once in a while the wait
+	 * for the lock is timed.
+	 */
+	public int nextInt() {
+		
+		if ((++lockTicks & RandomMetrics.SAMPLE_MASK) != 0) {
+			synchronized (this) {
+				return dispatch();
+			}
+		}
+		
+		final long start = System.nanoTime();
+		synchronized (this) {
+			metrics.lockWait(System.nanoTime() - start);
+			return dispatch();
+		}
+	}
+	
+	/**
+	 * select a source and return its next integer, without locking. Callers
+	 * either hold the lock or own the generator in a single thread.
+	 * 
+	 * @return next random integer
+	 */
+	protected final int dispatch() {
+		
+		final SourceSet set = current;
+		final int index = set.select(active);
+		final int tick = ++sampleTicks[index];
+		final int result;
+		
+		// collect stats on sources used, and time and test some of the results
+		if ((tick & RandomMetrics.SAMPLE_MASK) == 0) {
+			final long start = System.nanoTime();
+			result = set.nextInt(index);
+			metrics.sampled(index, System.nanoTime() - start);
+		} else {
+			result = set.nextInt(index);
+		}
+		
+		if ((tick & healthMask) == 0) checkHealth(index, result);
+		if ((++combinedTicks & healthMask) == 0) checkCombined(result);
 		return result;
 	}
 	
+	/**
+	 * provides 64 bits from one of the random sources with a single dispatch
+	 */
+	@Override
+	protected long nextLong64() {
+		
+		if ((++lockTicks & RandomMetrics.SAMPLE_MASK) != 0) {
+			synchronized (this) {
+				return dispatchLong();
+			}
+		}
+		
+		final long start = System.nanoTime();
+		synchronized (this) {
+			metrics.lockWait(System.nanoTime() - start);
+			return dispatchLong();
+		}
+	}
+	
+	/**
+	 * select a source and return its next 64 bits, without locking. 
+	 * 
+	 * @return next random long
+	 */
+	protected final long dispatchLong() {
+		
+		final SourceSet set = current;
+		final int index = set.select(active);
+		final int tick = ++sampleTicks[index];
+		final long result;
+		
+		if ((tick & RandomMetrics.SAMPLE_MASK) == 0) {
+			final long start = System.nanoTime();
+			result = set.nextLong(index);
+			metrics.sampled(index, System.nanoTime() - start);
+		} else {
+			result = set.nextLong(index);
+		}
+		if ((++longTicks & RandomMetrics.SAMPLE_MASK) == 0) metrics.sampledLongs();
+		
+		if ((tick & healthMask) == 0) checkHealth(index, (int) (result >>> 32));
+		if ((++combinedTicks & healthMask) == 0) {
+			checkCombined((int) (result >>> 32));
+			checkCombined((int) result);
+		}
+		return result;
+	}
+	
+	/**
+	 * all source indices
+	 * 
+	 * @return 0 to the number of sources - 1
+	 */
+	private int[] allSources() {
+		final int[] all = new int[randomClass.length];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = i;
+		}
+		return all;
+	}
+	
+	/**
+	 * start online health tests of the sources and the combined output, or stop them.
+	 * 
+	 * @param monitor health monitor, used only by this generator, or null to stop testing
+	 */
+	public synchronized void monitorHealth(final HealthMonitor monitor) {
+		
+		if (monitor != null) monitor.reset(randomClass.length);
+		health = monitor;
+		healthMask = monitor == null ? -1 : monitor.getSampleMask();
+	}
+	
+	/**
+	 * indices of the sources still selected
+	 * 
+	 * @return active sources
+	 */
+	public int[] getActiveSources() {
+		return active.clone();
+	}
+	
+	/**
+	 * select all sources again, including any disabled by the health tests
+	 */
+	public synchronized void enableAllSources() {
+		active = allSources();
+	}
+	
+	/**
+	 * test a sampled result of a source. A failure is counted in the metrics and passed 
+	 * to the listener, and if the monitor says so the source is no longer selected, 
+	 * unless it is the last one.
+	 * 
+	 * @param index source of the result
+	 * @param result sampled result
+	 */
+	private void checkHealth(final int index, final int result) {
+		
+		final HealthMonitor monitor = health;
+		if (monitor == null) return;
+		
+		final String failed = monitor.sample(index, result);
+		
+		if (failed != null) {
+			metrics.healthFailed();
+			monitor.getListener().failed(this, index, failed);
+			
+			final int[] sources = active;
+			if (monitor.isDisableFailing() && sources.length > 1) {
+				final int[] remaining = new int[sources.length - 1];
+				int j = 0;
+				for (final int source : sources) {
+					if (source != index && j < remaining.length) remaining[j++] = source;
+				}
+				if (j == remaining.length) active = remaining;
+			}
+		}
+	}
+	
+	/**
+	 * test a sampled draw of the combined output, whichever source it came from
+	 * 
+	 * @param result sampled output
+	 */
+	private void checkCombined(final int result) {
+		
+		final HealthMonitor monitor = health;
+		if (monitor == null) return;
+		
+		final String failed = monitor.sampleCombined(result);
+		
+		if (failed != null) {
+			metrics.healthFailed();
+			monitor.getListener().failed(this, -1, failed);
+		}
+	}
+	
 	/**
 	 * override of the next(bits) method
 	 * 
 	 * @param bits number of random bits to return
 	 */
 	public int next(final int bits) {
-		incCalls();
 		return nextInt() >>> (32 - bits);
 		
 	}
+	
+	
+	/**
+	 * the generators and the internal state used to select the next one. Replaced as a
+	 * whole when reseeding.
+	 */
+	static final class SourceSet implements java.io.Serializable {
+		
+		private static final long serialVersionUID = 4473916210982135786L;
+		
+		/* mask for absolute value of an integer */
+		private static final int SIGN_MASK = 0x7FFFFFFF;
+		
+		final ExtendedRandom[] sources;
+		
+		/*
+		 * internal state. used to select the next random number generator to use
+		 */
+		int state;
+		
+		/* generator used only by reseed() for its mix bytes, so readers never share it */
+		ExtendedRandom mixer;
+		
+		SourceSet(final ExtendedRandom[] sources, final int state) {
+			this.sources = sources;
+			this.state = state;
+		}
+		
+		/**
+		 * split the reseed generator from one of the sources, once they are seeded
+		 */
+		void splitMixer() {
+			mixer = sources[(state & SIGN_MASK) % sources.length].split();
+		}
+		
+		/**
+		 * select a source
+		 * 
+		 * @param active indices of the sources that may be selected
+		 * @return index of the source
+		 */
+		int select(final int[] active) {
+			return active[(state & SIGN_MASK) % active.length];
+		}
+		
+		/**
+		 * next integer of a source
+		 * 
+		 * @param index source
+		 * @return next random integer
+		 */
+		int nextInt(final int index) {
+			// get result from selected source
+			final int result = sources[index].nextInt();
+			
+			// update state by incrementing with result. the result is masked to be
+			// positive so that the average isn't zero because the average result is 0.
+			// this way it may increase and overflow to be negative at some point which 
+			// is ok because we force it to be positive above.
+			state += result & SIGN_MASK;
+			return result;
+		}
+		
+		/**
+		 * next 64 bits of a source
+		 * 
+		 * @param index source
+		 * @return next random long
+		 */
+		long nextLong(final int index) {
+			final long result = sources[index].nextLong64();
+			
+			// update state the same way as for integers, using the high half
+			state += (int) (result >>> 32) & SIGN_MASK;
+			return result;
+		}
+	}
 }
@@ -43,5 +43,14 @@ public class MultiplyWithCarry extends ExtendedRandom {
 		seed = (multiplier * (seed & 0xffffffffL)) + (seed >>> 32);
 		return (int)(seed >>> (64 - bits));
 	}
+	
+	/**
+	 * provide the whole 64 bit state from one step
+	 */
+	protected synchronized final long nextLong64() {
+		
+		seed = (multiplier * (seed & 0xffffffffL)) + (seed >>> 32);
+		return seed;
+	}
 
 }
@@ -0,0 +1,395 @@
+package prng;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * generator that draws from a ring of random values filled ahead of time by a background
+ * thread. Consumers only claim slots from the ring, so they do not take the lock of the
+ * source and do not see the uneven cost of generators that work in batches, such as
+ * DigestRandom refreshing its state or MersenneTwister regenerating its block.
+ *
+ * The ring is a bounded multi producer multi consumer queue of longs (Dmitry Vyukov's
+ * design): each slot has a sequence number that tells producers and consumers whether the
+ * slot is free or filled, so claiming a slot is a single compare and set. The head and
+ * tail counters are kept on separate cache lines.
+ *
+ * The producer fills the ring up to the high watermark and then sleeps until consumers
+ * take it below the low watermark. If the ring runs empty the EmptyPolicy decides what a
+ * consumer does.  Requests for many bytes go to the source directly so that they do not
+ * drain the ring.
+ *
+ * The source must be thread safe, as the producer and, with EmptyPolicy.INLINE, consumers
+ * use it at the same time.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class PrefetchRandom extends ExtendedRandom implements AutoCloseable {
+
+	private static final long serialVersionUID = 2975146920134486630L;
+
+	/**
+	 * what a consumer does when the ring is empty
+	 */
+	public enum EmptyPolicy {
+		/* draw from the source directly, taking its lock */
+		INLINE,
+		/* spin until the producer has filled a slot */
+		SPIN,
+		/* throw IllegalStateException */
+		THROW
+	}
+
+	final static int DEFAULT_CAPACITY = 1 << 12; // longs in the ring
+	final static int BLOCK = 256;                // longs generated at a time by the producer
+
+	/* indices of the counters, 128 bytes apart so they are on different cache lines */
+	private static final int HEAD = 15;
+	private static final int TAIL = 31;
+	private static final int COUNTERS = 47;
+
+	private final ExtendedRandom source;
+	private final int capacity;
+	private final int mask;
+	private final int lowWatermark;
+	private final int highWatermark;
+	private final EmptyPolicy policy;
+
+	private final transient long[] values;
+	private final transient AtomicLongArray sequences;
+	private final transient AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+
+	private final transient Thread producer;
+	private volatile boolean running = true;
+	private volatile boolean sleeping = false;
+
+	/* metrics */
+	private volatile long refills = 0;
+	private volatile long producerNanos = 0;
+	private final transient LongAdder emptyHits = new LongAdder();
+
+	/**
+	 * prefetch from a new MultiRandom
+	 */
+	public PrefetchRandom() {
+		this(new MultiRandom());
+	}
+
+	/**
+	 * prefetch from a source with the default ring
+	 *
+	 * @param source thread safe generator to prefetch from
+	 */
+	public PrefetchRandom(final ExtendedRandom source) {
+		this(source, DEFAULT_CAPACITY, DEFAULT_CAPACITY / 4, DEFAULT_CAPACITY, EmptyPolicy.INLINE);
+	}
+
+	/**
+	 * prefetch from a source
+	 *
+	 * @param source thread safe generator to prefetch from
+	 * @param capacity longs in the ring, a power of two
+	 * @param lowWatermark the producer wakes when fewer values than this are left, at least 1
+	 * @param highWatermark the producer fills the ring up to this many values
+	 * @param policy what to do when the ring is empty
+	 */
+	public PrefetchRandom(final ExtendedRandom source, final int capacity, final int lowWatermark,
+			final int highWatermark, final EmptyPolicy policy) {
+
+		if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a power of two");
+		if (lowWatermark < 1 || lowWatermark >= highWatermark || highWatermark > capacity) {
+			throw new IllegalArgumentException("watermarks must satisfy 0 < low < high <= capacity");
+		}
+
+		this.source = source;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+		this.policy = policy;
+
+		values = new long[capacity];
+		sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+
+		producer = new Thread(this::produce, "random prefetch");
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * producer loop. Generates blocks from the source and offers them to the ring.
+	 */
+	private void produce() {
+
+		final long[] block = new long[BLOCK];
+		int next = BLOCK;
+
+		while (running) {
+
+			if (available() >= highWatermark) {
+				sleeping = true;
+				// the condition is checked after setting the flag, so a consumer that took
+				// the ring below the low watermark before it could see the flag is not missed
+				while (running && available() >= lowWatermark) {
+					LockSupport.park(this);
+				}
+				sleeping = false;
+				continue;
+			}
+
+			if (next == BLOCK) {
+				final long start = System.nanoTime();
+				source.fill(block);
+				producerNanos += System.nanoTime() - start;
+				refills++;
+				next = 0;
+			}
+
+			while (next < BLOCK && available() < highWatermark && offer(block[next])) {
+				next++;
+			}
+		}
+	}
+
+	/**
+	 * add a value to the ring
+	 *
+	 * @param value value to add
+	 * @return false if the ring is full
+	 */
+	private boolean offer(final long value) {
+
+		long position = counters.get(TAIL);
+
+		for (;;) {
+			final int index = (int) position & mask;
+			final long difference = sequences.getAcquire(index) - position;
+
+			if (difference == 0) {
+				if (counters.compareAndSet(TAIL, position, position + 1)) {
+					values[index] = value;
+					sequences.setRelease(index, position + 1);
+					return true;
+				}
+				position = counters.get(TAIL);
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = counters.get(TAIL);
+			}
+		}
+	}
+
+	/**
+	 * take a value from the ring
+	 *
+	 * @return next value
+	 */
+	private long take() {
+
+		long position = counters.get(HEAD);
+
+		for (;;) {
+			final int index = (int) position & mask;
+			final long difference = sequences.getAcquire(index) - (position + 1);
+
+			if (difference == 0) {
+				if (counters.compareAndSet(HEAD, position, position + 1)) {
+					final long value = values[index];
+					sequences.setRelease(index, position + capacity);
+					if (sleeping && available() < lowWatermark) LockSupport.unpark(producer);
+					return value;
+				}
+				position = counters.get(HEAD);
+			} else if (difference < 0) {
+				// empty, apply the policy
+				emptyHits.increment();
+				LockSupport.unpark(producer);
+
+				if (policy == EmptyPolicy.INLINE) return source.nextLong64();
+				if (policy == EmptyPolicy.THROW) throw new IllegalStateException("prefetch ring is empty");
+
+				while (available() <= 0) {
+					if (!running) throw new IllegalStateException("prefetch closed");
+					Thread.onSpinWait();
+				}
+				position = counters.get(HEAD);
+			} else {
+				position = counters.get(HEAD);
+			}
+		}
+	}
+
+	/**
+	 * number of values in the ring
+	 *
+	 * @return values available
+	 */
+	public int available() {
+		return (int) Math.max(0, counters.get(TAIL) - counters.get(HEAD));
+	}
+
+	/**
+	 * number of blocks the producer has generated
+	 *
+	 * @return refills
+	 */
+	public long getRefills() {
+		return refills;
+	}
+
+	/**
+	 * time the producer has spent generating
+	 *
+	 * @return nanoseconds
+	 */
+	public long getProducerNanos() {
+		return producerNanos;
+	}
+
+	/**
+	 * number of times a consumer found the ring empty
+	 *
+	 * @return empty hits
+	 */
+	public long getEmptyHits() {
+		return emptyHits.sum();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public EmptyPolicy getEmptyPolicy() {
+		return policy;
+	}
+
+	/**
+	 * provide the next random bits from the ring
+	 *
+	 * @param bits - requested bits, ranges from 1 to 32
+	 */
+	protected int next(final int bits) {
+		return (int) (take() >>> (64 - bits));
+	}
+
+	protected long nextLong64() {
+		return take();
+	}
+
+	/**
+	 * fill a buffer from the ring, or from the source if it is larger than the low watermark
+	 *
+	 * @param buffer buffer to fill
+	 */
+	@Override
+	public void fill(final ByteBuffer buffer) {
+
+		if (buffer.remaining() > lowWatermark * Long.BYTES) {
+			source.fill(buffer);
+			return;
+		}
+
+		final ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.remaining() >= Long.BYTES) {
+			buffer.putLong(take());
+		}
+		if (buffer.hasRemaining()) {
+			for (long rnd = take(); buffer.hasRemaining(); rnd >>= 8) {
+				buffer.put((byte) rnd);
+			}
+		}
+
+		buffer.order(order);
+	}
+
+	@Override
+	public void fill(final int[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (int) (take() >>> 32);
+		}
+	}
+
+	@Override
+	public void fill(final long[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = take();
+		}
+	}
+
+	@Override
+	public void fill(final double[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (take() >>> 11) * 0x1.0p-53;
+		}
+	}
+
+	/**
+	 * seed the source. Values already in the ring are still used.
+	 */
+	@Override
+	public void setSeed(final long seed) {
+		if (source == null) {
+			super.setSeed(seed);
+			return;
+		}
+		source.setSeed(seed);
+	}
+
+	@Override
+	void setSeed(final byte[] seed) {
+		source.setSeed(seed);
+	}
+
+	@Override
+	public void absorb(final ByteBuffer input) {
+		source.absorb(input);
+	}
+
+	@Override
+	int entropySize() {
+		return source.entropySize();
+	}
+
+	/**
+	 * split the source. The child is used by one thread, so it does not prefetch.
+	 */
+	@Override
+	public ExtendedRandom split() {
+		return source.split();
+	}
+
+	/**
+	 * stop the producer
+	 */
+	public void close() {
+		running = false;
+		LockSupport.unpark(producer);
+	}
+}
@@ -42,5 +42,15 @@ public class Random64 extends ExtendedRandom {
 		seed = seed * multiplier + addend;
 		return (int) (seed >>> (48 - bits));
 	}
+	
+	/**
+	 * provide 64 bits from one step. The high half is folded into the low half because
+	 * the low bits of a power of two LCG have short periods.
+	 */
+	protected synchronized final long nextLong64() {
+		
+		seed = seed * multiplier + addend;
+		return seed ^ (seed >>> 32);
+	}
 
 }
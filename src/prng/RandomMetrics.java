@@ -0,0 +1,338 @@
+package prng;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * runtime counters of a MultiRandom. The counters are LongAdders, so they do not
+ * overflow in practice, and threads that count at once do not contend on one cache line.
+ *
+ * Even an uncontended LongAdder costs an atomic update, which is a noticeable part of a
+ * draw. So the generator counts draws in plain int ticks that it owns, and adds them to
+ * the counters every SAMPLE_RATE draws, when it also times the call of the source. The
+ * wait for the generator lock is timed once in SAMPLE_RATE calls as well, and the
+ * averages are reported.
+ *
+ * A snapshot reads all the counters at once. The generator takes it under its lock, so
+ * the draws in a snapshot agree with each other. It can be published over JMX with
+ * register().
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public final class RandomMetrics {
+
+	/* one in this many calls of each source, and lock acquisitions, is timed */
+	final static int SAMPLE_RATE = 1024;
+	final static int SAMPLE_MASK = SAMPLE_RATE - 1;
+
+	/* JMX domain of the published metrics */
+	final static String DOMAIN = "prng";
+
+	private final LongAdder[] draws;
+	private final LongAdder longDraws = new LongAdder();
+	private final LongAdder[] timedDraws;
+	private final LongAdder[] timedNanos;
+
+	private final LongAdder reseeds = new LongAdder();
+	private final LongAdder reseedNanos = new LongAdder();
+	private final AtomicLong maxReseedNanos = new AtomicLong();
+
+	private final LongAdder lockSamples = new LongAdder();
+	private final LongAdder lockWaitNanos = new LongAdder();
+
+	private final LongAdder healthFailures = new LongAdder();
+
+	/**
+	 * counters for a number of sources
+	 *
+	 * @param sources number of sources
+	 */
+	RandomMetrics(final int sources) {
+
+		draws = new LongAdder[sources];
+		timedDraws = new LongAdder[sources];
+		timedNanos = new LongAdder[sources];
+
+		for (int i = 0; i < sources; i++) {
+			draws[i] = new LongAdder();
+			timedDraws[i] = new LongAdder();
+			timedNanos[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * add SAMPLE_RATE draws of a source, and the time of the last one
+	 *
+	 * @param source source index
+	 * @param nanos time of the call
+	 */
+	void sampled(final int source, final long nanos) {
+		draws[source].add(SAMPLE_RATE);
+		timedDraws[source].increment();
+		timedNanos[source].add(nanos);
+	}
+
+	/**
+	 * add SAMPLE_RATE draws of 64 bits, which are also counted as draws of their sources
+	 */
+	void sampledLongs() {
+		longDraws.add(SAMPLE_RATE);
+	}
+
+	/**
+	 * record a reseed or absorb of entropy
+	 *
+	 * @param nanos time it took, including waiting for another reseed
+	 */
+	void reseeded(final long nanos) {
+		reseeds.increment();
+		reseedNanos.add(nanos);
+		maxReseedNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * record a sampled wait for the generator lock
+	 *
+	 * @param nanos time from asking for the lock to holding it
+	 */
+	void lockWait(final long nanos) {
+		lockSamples.increment();
+		lockWaitNanos.add(nanos);
+	}
+
+	/**
+	 * record a failed health test
+	 */
+	void healthFailed() {
+		healthFailures.increment();
+	}
+
+	/**
+	 * total draws of all sources
+	 *
+	 * @param ticks draw ticks of the sources
+	 * @return draws
+	 */
+	long getDraws(final int[] ticks) {
+		long total = 0;
+		for (final long count : getSourceDraws(ticks)) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * draws of each source, the counters and the ticks not yet added to them
+	 *
+	 * @param ticks draw ticks of the sources
+	 * @return draws
+	 */
+	long[] getSourceDraws(final int[] ticks) {
+		final long[] result = new long[draws.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = draws[i].sum() + (ticks[i] & SAMPLE_MASK);
+		}
+		return result;
+	}
+
+	/**
+	 * read all the counters
+	 *
+	 * @param sources names of the sources
+	 * @param ticks draw ticks of the sources
+	 * @param longTicks draw ticks of 64 bit draws
+	 * @return snapshot
+	 */
+	Snapshot snapshot(final String[] sources, final int[] ticks, final int longTicks) {
+
+		final long[] sourceDraws = getSourceDraws(ticks);
+		final double[] nanosPerDraw = new double[sourceDraws.length];
+		long total = 0;
+
+		for (int i = 0; i < sourceDraws.length; i++) {
+			total += sourceDraws[i];
+			final long timed = timedDraws[i].sum();
+			nanosPerDraw[i] = timed == 0 ? Double.NaN : (double) timedNanos[i].sum() / timed;
+		}
+
+		final long waits = lockSamples.sum();
+
+		return new Snapshot(System.currentTimeMillis(), sources, sourceDraws, nanosPerDraw, total,
+				4 * (total + longDraws.sum() + (longTicks & SAMPLE_MASK)), reseeds.sum(), reseedNanos.sum(), maxReseedNanos.get(),
+				waits == 0 ? Double.NaN : (double) lockWaitNanos.sum() / waits, healthFailures.sum());
+	}
+
+	/**
+	 * publish the metrics of a generator as an MXBean named prng:type=name,id=hash.
+	 *
+	 * @param random generator
+	 * @param type type in the object name
+	 * @return name of the registered bean, or null if it could not be registered
+	 */
+	public static ObjectName register(final MultiRandom random, final String type) {
+
+		try {
+			final ObjectName name = new ObjectName(DOMAIN + ":type=" + type
+					+ ",id=" + Integer.toHexString(System.identityHashCode(random)));
+			final RandomMetricsMXBean bean = random::getMetrics;
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					new StandardMBean(bean, RandomMetricsMXBean.class, true), name);
+			return name;
+
+		} catch (JMException e) {
+			System.err.println("could not register metrics: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * remove a bean published by register()
+	 *
+	 * @param name name returned by register, may be null
+	 */
+	public static void unregister(final ObjectName name) {
+
+		if (name == null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException e) {
+			System.err.println("could not unregister metrics: " + e);
+		}
+	}
+
+
+	/**
+	 * the counters of a generator at one time. The getters make it an open type, so
+	 * JMX clients see it as one composite value.
+	 */
+	public static final class Snapshot {
+
+		private final long time;
+		private final String[] sources;
+		private final long[] sourceDraws;
+		private final double[] sourceNanosPerDraw;
+		private final long draws;
+		private final long bytes;
+		private final long reseeds;
+		private final long reseedNanos;
+		private final long maxReseedNanos;
+		private final double lockWaitNanos;
+		private final long healthFailures;
+
+		Snapshot(final long time, final String[] sources, final long[] sourceDraws, final double[] sourceNanosPerDraw,
+				final long draws, final long bytes, final long reseeds, final long reseedNanos,
+				final long maxReseedNanos, final double lockWaitNanos, final long healthFailures) {
+			this.time = time;
+			this.sources = sources;
+			this.sourceDraws = sourceDraws;
+			this.sourceNanosPerDraw = sourceNanosPerDraw;
+			this.draws = draws;
+			this.bytes = bytes;
+			this.reseeds = reseeds;
+			this.reseedNanos = reseedNanos;
+			this.maxReseedNanos = maxReseedNanos;
+			this.lockWaitNanos = lockWaitNanos;
+			this.healthFailures = healthFailures;
+		}
+
+		/**
+		 * @return time of the snapshot in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return class names of the sources
+		 */
+		public String[] getSources() {
+			return sources.clone();
+		}
+
+		/**
+		 * @return draws of each source
+		 */
+		public long[] getSourceDraws() {
+			return sourceDraws.clone();
+		}
+
+		/**
+		 * @return sampled mean time of a call of each source, NaN before the first sample
+		 */
+		public double[] getSourceNanosPerDraw() {
+			return sourceNanosPerDraw.clone();
+		}
+
+		/**
+		 * @return draws of all sources
+		 */
+		public long getDraws() {
+			return draws;
+		}
+
+		/**
+		 * @return bytes of random output
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return reseeds and absorbs of entropy
+		 */
+		public long getReseeds() {
+			return reseeds;
+		}
+
+		/**
+		 * @return total time spent reseeding
+		 */
+		public long getReseedNanos() {
+			return reseedNanos;
+		}
+
+		/**
+		 * @return longest reseed
+		 */
+		public long getMaxReseedNanos() {
+			return maxReseedNanos;
+		}
+
+		/**
+		 * @return sampled mean wait for the generator lock, NaN before the first sample
+		 */
+		public double getLockWaitNanos() {
+			return lockWaitNanos;
+		}
+
+		/**
+		 * @return failed health tests of the sources and the combined output
+		 */
+		public long getHealthFailures() {
+			return healthFailures;
+		}
+	}
+}
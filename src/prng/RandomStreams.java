@@ -0,0 +1,262 @@
+package prng;
+
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * streams of random numbers for ExtendedRandom. Unlike the streams of java.util.Random,
+ * whose spliterators all share one generator, these spliterators split the generator
+ * when the stream is split. Each part of a parallel stream then has its own generator
+ * and does not contend for a lock, and the numbers depend only on the starting state
+ * of the generator and how the stream is split, not on thread timing.
+ *
+ *   copyright 2019 Matthew Clark
+
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+final class RandomStreams {
+
+	/* characteristics of all the spliterators */
+	private static final int CHARACTERISTICS = Spliterator.SIZED | Spliterator.SUBSIZED
+			| Spliterator.NONNULL | Spliterator.IMMUTABLE;
+
+	private RandomStreams() {
+	}
+
+	/**
+	 * check stream size
+	 * @param size number of values in the stream
+	 */
+	private static void checkSize(final long size) {
+		if (size < 0) throw new IllegalArgumentException("size must be non-negative");
+	}
+
+	/**
+	 * stream of integers. If origin is not less than bound the values are unbounded.
+	 *
+	 * @param random generator
+	 * @param size number of values
+	 * @param origin least value
+	 * @param bound upper bound (exclusive)
+	 * @return stream of integers
+	 */
+	static IntStream ints(final ExtendedRandom random, final long size, final int origin, final int bound) {
+		checkSize(size);
+		return StreamSupport.intStream(new IntSpliterator(random, 0, size, origin, bound), false);
+	}
+
+	/**
+	 * stream of longs. If origin is not less than bound the values are unbounded.
+	 *
+	 * @param random generator
+	 * @param size number of values
+	 * @param origin least value
+	 * @param bound upper bound (exclusive)
+	 * @return stream of longs
+	 */
+	static LongStream longs(final ExtendedRandom random, final long size, final long origin, final long bound) {
+		checkSize(size);
+		return StreamSupport.longStream(new LongSpliterator(random, 0, size, origin, bound), false);
+	}
+
+	/**
+	 * stream of doubles. If origin is not less than bound the values are in [0, 1).
+	 *
+	 * @param random generator
+	 * @param size number of values
+	 * @param origin least value
+	 * @param bound upper bound (exclusive)
+	 * @return stream of doubles
+	 */
+	static DoubleStream doubles(final ExtendedRandom random, final long size, final double origin, final double bound) {
+		checkSize(size);
+		return StreamSupport.doubleStream(new DoubleSpliterator(random, 0, size, origin, bound), false);
+	}
+
+
+	/**
+	 * spliterator of random integers.
+	 */
+	static final class IntSpliterator implements Spliterator.OfInt {
+
+		private final ExtendedRandom random;
+		private long index;
+		private final long fence;
+		private final int origin;
+		private final int bound;
+
+		IntSpliterator(final ExtendedRandom random, final long index, final long fence, final int origin, final int bound) {
+			this.random = random;
+			this.index = index;
+			this.fence = fence;
+			this.origin = origin;
+			this.bound = bound;
+		}
+
+		private int nextValue() {
+			return origin < bound ? random.nextInt(origin, bound) : random.nextInt();
+		}
+
+		public IntSpliterator trySplit() {
+			final long i = index, m = (i + fence) >>> 1;
+			if (m <= i) return null;
+			index = m;
+			return new IntSpliterator(random.split(), i, m, origin, bound);
+		}
+
+		public boolean tryAdvance(final IntConsumer consumer) {
+			if (index < fence) {
+				consumer.accept(nextValue());
+				index++;
+				return true;
+			}
+			return false;
+		}
+
+		public void forEachRemaining(final IntConsumer consumer) {
+			for (; index < fence; index++) {
+				consumer.accept(nextValue());
+			}
+		}
+
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
+
+	/**
+	 * spliterator of random longs.
+	 */
+	static final class LongSpliterator implements Spliterator.OfLong {
+
+		private final ExtendedRandom random;
+		private long index;
+		private final long fence;
+		private final long origin;
+		private final long bound;
+
+		LongSpliterator(final ExtendedRandom random, final long index, final long fence, final long origin, final long bound) {
+			this.random = random;
+			this.index = index;
+			this.fence = fence;
+			this.origin = origin;
+			this.bound = bound;
+		}
+
+		private long nextValue() {
+			return origin < bound ? random.nextLong(origin, bound) : random.nextLong();
+		}
+
+		public LongSpliterator trySplit() {
+			final long i = index, m = (i + fence) >>> 1;
+			if (m <= i) return null;
+			index = m;
+			return new LongSpliterator(random.split(), i, m, origin, bound);
+		}
+
+		public boolean tryAdvance(final LongConsumer consumer) {
+			if (index < fence) {
+				consumer.accept(nextValue());
+				index++;
+				return true;
+			}
+			return false;
+		}
+
+		public void forEachRemaining(final LongConsumer consumer) {
+			for (; index < fence; index++) {
+				consumer.accept(nextValue());
+			}
+		}
+
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+
+
+	/**
+	 * spliterator of random doubles.
+	 */
+	static final class DoubleSpliterator implements Spliterator.OfDouble {
+
+		private final ExtendedRandom random;
+		private long index;
+		private final long fence;
+		private final double origin;
+		private final double bound;
+
+		DoubleSpliterator(final ExtendedRandom random, final long index, final long fence, final double origin, final double bound) {
+			this.random = random;
+			this.index = index;
+			this.fence = fence;
+			this.origin = origin;
+			this.bound = bound;
+		}
+
+		private double nextValue() {
+			return origin < bound ? random.nextDouble(origin, bound) : random.nextDouble();
+		}
+
+		public DoubleSpliterator trySplit() {
+			final long i = index, m = (i + fence) >>> 1;
+			if (m <= i) return null;
+			index = m;
+			return new DoubleSpliterator(random.split(), i, m, origin, bound);
+		}
+
+		public boolean tryAdvance(final DoubleConsumer consumer) {
+			if (index < fence) {
+				consumer.accept(nextValue());
+				index++;
+				return true;
+			}
+			return false;
+		}
+
+		public void forEachRemaining(final DoubleConsumer consumer) {
+			for (; index < fence; index++) {
+				consumer.accept(nextValue());
+			}
+		}
+
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		public int characteristics() {
+			return CHARACTERISTICS;
+		}
+	}
+}
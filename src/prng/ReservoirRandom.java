@@ -0,0 +1,191 @@
+package prng;
+
+import java.nio.ByteBuffer;
+
+/**
+ * wrapper that keeps a reservoir of random bits drawn 64 at a time from another generator,
+ * and serves small requests from it.  nextBoolean uses one bit, nextByte uses eight, and
+ * next(bits) and small bounded integers use only as many bits as they need, so a coin flip
+ * or a password character costs a fraction of a call to the underlying generator.
+ *
+ * Requests for 8 or more bytes, and for 64 bit values, go straight to the underlying
+ * generator.
+ *
+ *   copyright 2019 Matthew Clark
+
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class ReservoirRandom extends ExtendedRandom {
+
+	private static final long serialVersionUID = 6017432887165253148L;
+
+	/* bounds up to this size are served from the reservoir by rejection sampling */
+	private static final int SMALL_BOUND = 1 << 16;
+
+	/* generator that fills the reservoir */
+	private final ExtendedRandom source;
+
+	/* buffered random bits, used from the low end */
+	private long reservoir;
+	/* number of bits left in the reservoir */
+	private int available = 0;
+
+	/**
+	 * create a reservoir over a generator
+	 *
+	 * @param source generator to draw bits from
+	 */
+	public ReservoirRandom(final ExtendedRandom source) {
+		this.source = source;
+	}
+
+	/**
+	 * take bits from the reservoir, refilling it from the source when there are not enough.
+	 *
+	 * @param count number of bits, 1 to 32
+	 * @return random bits in the low end of the result
+	 */
+	private final int take(final int count) {
+
+		if (available < count) {
+			reservoir = source.nextLong64();
+			available = 64;
+		}
+
+		final int result = (int) (reservoir & (-1L >>> (64 - count)));
+		reservoir >>>= count;
+		available -= count;
+		return result;
+	}
+
+	/**
+	 * provide the next random bits from the reservoir
+	 *
+	 * @param bits - requested bits, ranges from 1 to 32
+	 */
+	protected synchronized final int next(final int bits) {
+		return take(bits);
+	}
+
+	/**
+	 * 64 bits directly from the source
+	 */
+	protected long nextLong64() {
+		return source.nextLong64();
+	}
+
+	/**
+	 * random boolean using a single bit
+	 */
+	@Override
+	public synchronized boolean nextBoolean() {
+		return take(1) != 0;
+	}
+
+	/**
+	 * random byte using eight bits
+	 *
+	 * @return random byte
+	 */
+	public synchronized byte nextByte() {
+		return (byte) take(8);
+	}
+
+	/**
+	 * random integer in [0, bound). Small bounds draw just enough bits to cover the bound
+	 * and reject values that are too large, which needs on average less than two tries.
+	 *
+	 * @param bound upper bound (exclusive), must be positive
+	 * @return random integer
+	 */
+	@Override
+	public synchronized int nextInt(final int bound) {
+
+		if (bound <= 0 || bound > SMALL_BOUND) {
+			return super.nextInt(bound);
+		}
+
+		final int bits = 32 - Integer.numberOfLeadingZeros(bound - 1);
+		if (bits == 0) return 0;
+
+		int result;
+		do {
+			result = take(bits);
+		} while (result >= bound);
+
+		return result;
+	}
+
+	/**
+	 * fill a buffer. Short requests use bytes from the reservoir, longer ones use the
+	 * bulk fill of the source.
+	 *
+	 * @param buffer buffer to fill
+	 */
+	@Override
+	public synchronized void fill(final ByteBuffer buffer) {
+
+		if (buffer.remaining() >= 8) {
+			source.fill(buffer);
+			return;
+		}
+
+		while (buffer.hasRemaining()) {
+			buffer.put((byte) take(8));
+		}
+	}
+
+	/**
+	 * seed the source. Called by the Random constructor before the source is set.
+	 */
+	@Override
+	public synchronized void setSeed(final long seed) {
+		if (source == null) {
+			super.setSeed(seed);
+			return;
+		}
+		source.setSeed(seed);
+		available = 0;
+	}
+
+	@Override
+	synchronized void setSeed(final byte[] seed) {
+		source.setSeed(seed);
+		available = 0;
+	}
+
+	@Override
+	public synchronized void absorb(final ByteBuffer input) {
+		source.absorb(input);
+		available = 0;
+	}
+
+	@Override
+	int entropySize() {
+		return source.entropySize();
+	}
+
+	/**
+	 * split the source and wrap the child in a new reservoir.
+	 */
+	@Override
+	public ReservoirRandom split() {
+		return new ReservoirRandom(source.split());
+	}
+}
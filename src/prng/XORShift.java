@@ -1,5 +1,8 @@
 package prng;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * implementation of Marsiglia XOR shift random number generator.  
  * Although it may have the weakness that zero is never a native
@@ -76,15 +79,58 @@ public class XORShift extends ExtendedRandom {
 	protected synchronized final int next(final int bits) {
 		  return (int) (xorshift1024star() >>> (64 - bits)) ;
 	}
+	
+	/**
+	 * all 64 bits of the next value
+	 */
+	protected synchronized final long nextLong64() {
+		return xorshift1024star();
+	}
 
 	@Override
 	void setSeed(byte[] seed) {
 		setSeed(bytesToLong(seed));
 	}
+	
+	/**
+	 * xor the mixed input into the state words, starting after the current one.
+	 * 
+	 * @param input entropy
+	 */
+	@Override
+	public synchronized void absorb(final ByteBuffer input) {
+		
+		int i = p;
+		while (input.hasRemaining()) {
+			i = (i + 1) & (STATE_SIZE - 1);
+			state[i] ^= mix(nextWord(input));
+		}
+	}
 
 
 	@Override
 	int entropySize() {
 		return STATE_SIZE;
 	}
+	
+	@Override
+	synchronized void clearState() {
+		seed = 0;
+		p = 0;
+		if (state != null) Arrays.fill(state, 0);
+	}
+	
+	/**
+	 * split with the whole state of the child taken from this generator.
+	 */
+	@Override
+	public synchronized XORShift split() {
+		
+		final XORShift child = new XORShift();
+		child.p = 0;
+		for (int i = 0; i < STATE_SIZE; i++) {
+			child.state[i] = xorshift1024star();
+		}
+		return child;
+	}
 }
@@ -1,5 +1,7 @@
 package prng;
 
+import java.nio.ByteBuffer;
+
 /**
  *
  * 
@@ -106,18 +108,45 @@ public class Xoroshiro128 extends ExtendedRandom {
     }
 
     
-    @Override
-    protected synchronized final int next(int bits) {
+    /**
+     * advance the state
+     * @return the 64 bit sum of the old state
+     */
+    private final long step() {
     	
         final long s0 = state0;
         long s1 = state1;
-        final int result = (int)(s0 + s1) >>> (32 - bits);
+        final long result = s0 + s1;
         s1 ^= s0;
         state0 = (s0 << 55 | s0 >>> 9) ^ s1 ^ (s1 << 14); // a, b
         state1 = (s1 << 36 | s1 >>> 28); // c
         return result;
     }
     
+    /**
+     * xor the mixed input into the state, one step per 8 bytes so that the input reaches
+     * both halves.
+     * 
+     * @param input entropy
+     */
+    @Override
+    public synchronized void absorb(final ByteBuffer input) {
+    	while (input.hasRemaining()) {
+    		state0 ^= mix(nextWord(input));
+    		step();
+    	}
+    }
+    
+    @Override
+    protected synchronized final int next(int bits) {
+        return (int) step() >>> (32 - bits);
+    }
+    
+    @Override
+    protected synchronized final long nextLong64() {
+        return step();
+    }
+    
 
 	@Override
 	int entropySize() {
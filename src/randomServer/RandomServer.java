@@ -0,0 +1,473 @@
+package randomServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import prng.ExtendedRandom;
+import prng.PrefetchRandom;
+import trueRandom.TrueRandom;
+
+/**
+ * serves random bytes from one generator to the other processes of a host, so that they
+ * share its entropy gathering and reseeding instead of each running their own TrueRandom.
+ * It listens on a Unix domain socket, on a loopback TCP port, or both.
+ *
+ * A request is a 4 byte big endian count of bytes, from 1 to MAX_REQUEST, and the answer
+ * is that many random bytes. A client may send many requests without waiting, and the
+ * answers come back in order. Since answers have no framing, the server only keeps the
+ * number of bytes it owes each client. A request out of range closes the connection.
+ *
+ * One thread runs a selector over all the connections. It fills direct buffers from the
+ * generator and sends up to GATHER of them with one gathering write. It stops reading a
+ * connection that is owed more than MAX_OWED bytes until the client catches up. The
+ * default generator is a TrueRandom behind a PrefetchRandom whose ring holds a few
+ * blocks, so a request is served from bytes generated in the background.
+ *
+ * usage: RandomServer [-u socket path] [-p port]
+ *
+ * Without options it listens on DEFAULT_SOCKET in a directory of the temporary directory
+ * that only the user can use. A socket file is made readable and writable by the owner
+ * only, so other users can not connect to it.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class RandomServer implements AutoCloseable {
+
+	final static String DEFAULT_SOCKET = "trueRandom.socket";
+	final static int MAX_REQUEST = 1 << 20;   // largest request in bytes
+	final static int BLOCK = 1 << 16;         // bytes in each output buffer
+	final static int GATHER = 8;              // buffers in one gathering write
+	final static long MAX_OWED = 1 << 22;     // bytes owed to a client before it is not read
+	final static int REQUESTS = 256;          // requests read at a time
+	final static int RING = 1 << 16;          // longs in the ring of the default generator
+
+	private final ExtendedRandom random;
+	private final Selector selector;
+	private final List<ServerSocketChannel> servers = new ArrayList<ServerSocketChannel>();
+	private final List<Path> sockets = new ArrayList<Path>();
+
+	/* generators the server created, closed when it shuts down */
+	private final List<AutoCloseable> owned = new ArrayList<AutoCloseable>();
+
+	/* output buffers not in use */
+	private final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+
+	private Thread thread = null;
+	private volatile boolean closed = false;
+
+	/**
+	 * state of one client connection
+	 */
+	static final class Connection {
+
+		final SocketChannel channel;
+		final ByteBuffer requests = ByteBuffer.allocateDirect(REQUESTS * Integer.BYTES);
+		/* filled buffers not yet completely written */
+		final ArrayDeque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+		final ByteBuffer[] gather = new ByteBuffer[GATHER];
+		/* bytes requested and not yet generated */
+		long owed = 0;
+
+		Connection(final SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * main
+	 *
+	 * @param args [-u socket path] [-p port]
+	 * @throws IOException if a socket can not be opened
+	 */
+	public static void main(String[] args) throws IOException {
+
+		Path socket = null;
+		int port = -1;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-u":
+				socket = Paths.get(args[++i]);
+				break;
+			case "-p":
+				port = Integer.parseInt(args[++i]);
+				break;
+			default:
+				System.err.println("usage: RandomServer [-u socket path] [-p port]");
+				System.exit(1);
+			}
+		}
+		if (socket == null && port < 0) {
+			socket = defaultSocket();
+			privateDirectory(socket.getParent());
+		}
+
+		final RandomServer server = new RandomServer();
+		if (socket != null) server.bind(UnixDomainSocketAddress.of(socket));
+		if (port >= 0) server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+		Runtime.getRuntime().addShutdownHook(new Thread(server::close, "random server shutdown"));
+		server.start();
+		System.err.println("serving random bytes on " + server.getAddresses());
+	}
+
+	/**
+	 * path of the default Unix domain socket
+	 *
+	 * @return socket path in the user's directory of the temporary directory
+	 */
+	public static Path defaultSocket() {
+		return Paths.get(System.getProperty("java.io.tmpdir"), "trueRandom-" + System.getProperty("user.name"), DEFAULT_SOCKET);
+	}
+
+	/**
+	 * create a directory that only the user can use, or check that an existing one
+	 * belongs to the user, so that no one else can replace the socket in it
+	 *
+	 * @param directory directory path
+	 * @throws IOException if it can not be created, or belongs to someone else
+	 */
+	static void privateDirectory(final Path directory) throws IOException {
+
+		try {
+			if (!Files.isDirectory(directory)) {
+				Files.createDirectory(directory,
+						PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			}
+			if (!Files.getOwner(directory).getName().equals(System.getProperty("user.name"))) {
+				throw new IOException(directory + " belongs to another user");
+			}
+			Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+		} catch (UnsupportedOperationException e) {
+			Files.createDirectories(directory);
+		}
+	}
+
+	/**
+	 * server for a TrueRandom, prefetched in the background. The server owns both, and
+	 * closes them when it shuts down.
+	 *
+	 * @throws IOException if the selector can not be opened
+	 */
+	public RandomServer() throws IOException {
+		this(new TrueRandom());
+	}
+
+	private RandomServer(final TrueRandom root) throws IOException {
+		this(new PrefetchRandom(root, RING, RING / 2, RING, PrefetchRandom.EmptyPolicy.INLINE));
+		// the prefetch first, so its producer stops drawing from the root
+		owned.add((PrefetchRandom) random);
+		owned.add(root);
+	}
+
+	/**
+	 * server for a generator. Only the server thread uses the generator, and the caller
+	 * closes it.
+	 *
+	 * @param random generator
+	 * @throws IOException if the selector can not be opened
+	 */
+	public RandomServer(final ExtendedRandom random) throws IOException {
+		this.random = random;
+		selector = Selector.open();
+	}
+
+	/**
+	 * listen on an address, a UnixDomainSocketAddress or a loopback InetSocketAddress. A
+	 * socket file left by a previous server is replaced, and the new one is made owner
+	 * only. Call before start().
+	 *
+	 * @param address address to listen on
+	 * @throws IOException if the address can not be bound
+	 */
+	public void bind(final SocketAddress address) throws IOException {
+
+		final ServerSocketChannel server;
+
+		if (address instanceof UnixDomainSocketAddress) {
+			final Path path = ((UnixDomainSocketAddress) address).getPath();
+			Files.deleteIfExists(path);
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(address);
+			sockets.add(path);
+			try {
+				Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+			} catch (UnsupportedOperationException e) {
+				// no posix permissions, the directory has to protect the socket
+			}
+		} else {
+			server = ServerSocketChannel.open();
+			server.bind(address);
+		}
+
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		servers.add(server);
+	}
+
+	/**
+	 * addresses the server listens on, with the actual port of a TCP socket bound to port 0
+	 *
+	 * @return addresses
+	 * @throws IOException if a socket is closed
+	 */
+	public List<SocketAddress> getAddresses() throws IOException {
+
+		final List<SocketAddress> result = new ArrayList<SocketAddress>();
+		for (final ServerSocketChannel server : servers) {
+			result.add(server.getLocalAddress());
+		}
+		return result;
+	}
+
+	/**
+	 * start serving in a new thread
+	 */
+	public synchronized void start() {
+
+		if (thread != null || closed) return;
+		thread = new Thread(this::run, "random server");
+		thread.start();
+	}
+
+	/**
+	 * stop serving, close all connections and remove the socket files. The server thread
+	 * closes them itself, and this waits for it.
+	 */
+	@Override
+	public void close() {
+
+		final Thread serving;
+		synchronized (this) {
+			closed = true;
+			serving = thread;
+		}
+
+		if (serving == null) {
+			shutdown();
+			return;
+		}
+
+		selector.wakeup();
+		try {
+			if (serving != Thread.currentThread()) serving.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * close the sockets and the selector, remove the socket files, and close the
+	 * generators the server created
+	 */
+	private void shutdown() {
+
+		try {
+			for (final SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+
+		for (final Path path : sockets) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				System.err.println("could not remove " + path + ": " + e);
+			}
+		}
+
+		for (final AutoCloseable generator : owned) {
+			try {
+				generator.close();
+			} catch (Exception e) {
+				System.err.println("could not close " + generator.getClass().getSimpleName() + ": " + e);
+			}
+		}
+		owned.clear();
+	}
+
+	/**
+	 * the selector loop
+	 */
+	private void run() {
+
+		try {
+			while (!closed) {
+				selector.select();
+
+				for (final SelectionKey key : selector.selectedKeys()) {
+					try {
+						if (!key.isValid()) continue;
+						if (key.isAcceptable()) accept((ServerSocketChannel) key.channel());
+						if (key.isValid() && key.isReadable()) read(key);
+						if (key.isValid() && key.isWritable()) write(key);
+
+					} catch (IOException e) {
+						// the client went away or sent a bad request
+						disconnect(key);
+					} catch (RuntimeException e) {
+						// a failure serving one client, such as from the generator, only ends that client
+						System.err.println("random server dropped a client: " + e);
+						if (key.channel() instanceof SocketChannel) disconnect(key);
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+		} catch (IOException e) {
+			System.err.println("random server stopped: " + e);
+		} finally {
+			shutdown();
+		}
+	}
+
+	/**
+	 * close a client connection
+	 *
+	 * @param key key of the connection
+	 */
+	private void disconnect(final SelectionKey key) {
+
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// already gone
+		}
+	}
+
+	/**
+	 * accept a new client
+	 *
+	 * @param server listening socket
+	 * @throws IOException if the client can not be set up
+	 */
+	private void accept(final ServerSocketChannel server) throws IOException {
+
+		final SocketChannel channel = server.accept();
+		if (channel == null) return;
+
+		channel.configureBlocking(false);
+		if (server.getLocalAddress() instanceof InetSocketAddress) {
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		}
+		channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+	}
+
+	/**
+	 * read the requests that have arrived and answer them
+	 *
+	 * @param key key of the connection
+	 * @throws IOException if the client closed the connection or sent a bad request
+	 */
+	private void read(final SelectionKey key) throws IOException {
+
+		final Connection connection = (Connection) key.attachment();
+		final ByteBuffer requests = connection.requests;
+
+		if (connection.channel.read(requests) < 0) throw new IOException("closed");
+
+		requests.flip();
+		while (requests.remaining() >= Integer.BYTES) {
+			final int size = requests.getInt();
+			if (size <= 0 || size > MAX_REQUEST) throw new IOException("bad request " + size);
+			connection.owed += size;
+		}
+		requests.compact();
+
+		write(key);
+	}
+
+	/**
+	 * generate and send what a client is owed, until the socket is full. Reading stops
+	 * while the client is owed too much, and the key waits for the socket to drain
+	 * while anything is left.
+	 *
+	 * @param key key of the connection
+	 * @throws IOException if the write fails
+	 */
+	private void write(final SelectionKey key) throws IOException {
+
+		final Connection connection = (Connection) key.attachment();
+		final ArrayDeque<ByteBuffer> pending = connection.pending;
+
+		while (connection.owed > 0 || !pending.isEmpty()) {
+
+			while (pending.size() < GATHER && connection.owed > 0) {
+				ByteBuffer buffer = free.poll();
+				if (buffer == null) buffer = ByteBuffer.allocateDirect(BLOCK);
+
+				buffer.clear().limit((int) Math.min(BLOCK, connection.owed));
+				random.fill(buffer);
+				buffer.flip();
+				pending.add(buffer);
+				connection.owed -= buffer.limit();
+			}
+
+			final int count = pending.size();
+			pending.toArray(connection.gather);
+			connection.channel.write(connection.gather, 0, count);
+
+			while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+				free.add(pending.poll());
+			}
+			if (!pending.isEmpty()) break;
+		}
+
+		int interest = connection.owed + bytes(pending) < MAX_OWED ? SelectionKey.OP_READ : 0;
+		if (!pending.isEmpty()) interest |= SelectionKey.OP_WRITE;
+		key.interestOps(interest);
+	}
+
+	/**
+	 * bytes left in buffers
+	 *
+	 * @param buffers buffers
+	 * @return total remaining bytes
+	 */
+	private static long bytes(final ArrayDeque<ByteBuffer> buffers) {
+
+		long total = 0;
+		for (final ByteBuffer buffer : buffers) {
+			total += buffer.remaining();
+		}
+		return total;
+	}
+}
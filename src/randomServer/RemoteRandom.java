@@ -0,0 +1,227 @@
+package randomServer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+import prng.ExtendedRandom;
+
+/**
+ * generator that takes its bytes from a RandomServer, so that a process uses the
+ * entropy gathering and reseeding of the server instead of running its own.
+ *
+ * Bytes are fetched a block at a time into a direct buffer. As soon as a block arrives
+ * the next one is requested, so the server generates it while this one is used, and
+ * a draw only waits on the socket when the bytes are used faster than they arrive.
+ *
+ * The server owns the state, so seeding and absorbing entropy have no effect. Failures
+ * to talk to the server are thrown as UncheckedIOException, since the methods of Random
+ * can not throw IOException. A connection can not be serialized, so neither can this.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class RemoteRandom extends ExtendedRandom implements AutoCloseable {
+
+	private static final long serialVersionUID = 8146271559318840753L;
+
+	final static int DEFAULT_BLOCK = 1 << 14; // bytes fetched at a time
+
+	private final SocketAddress address;
+	private final int blockSize;
+	private transient final SocketChannel channel;
+	private transient final ByteBuffer block;
+	private transient final ByteBuffer request = ByteBuffer.allocateDirect(Integer.BYTES);
+
+	/**
+	 * connect to the server on the default Unix domain socket
+	 *
+	 * @throws IOException if the server can not be reached
+	 */
+	public RemoteRandom() throws IOException {
+		this(UnixDomainSocketAddress.of(RandomServer.defaultSocket()));
+	}
+
+	/**
+	 * connect to a server
+	 *
+	 * @param address Unix domain socket or TCP address of the server
+	 * @throws IOException if the server can not be reached
+	 */
+	public RemoteRandom(final SocketAddress address) throws IOException {
+		this(address, DEFAULT_BLOCK);
+	}
+
+	/**
+	 * connect to a server
+	 *
+	 * @param address Unix domain socket or TCP address of the server
+	 * @param blockSize bytes fetched at a time, a multiple of 8 up to RandomServer.MAX_REQUEST
+	 * @throws IOException if the server can not be reached
+	 */
+	public RemoteRandom(final SocketAddress address, final int blockSize) throws IOException {
+
+		if (blockSize <= 0 || blockSize > RandomServer.MAX_REQUEST || blockSize % Long.BYTES != 0) {
+			throw new IllegalArgumentException("block size must be a multiple of 8 up to " + RandomServer.MAX_REQUEST);
+		}
+
+		this.address = address;
+		this.blockSize = blockSize;
+
+		channel = address instanceof UnixDomainSocketAddress
+				? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+		channel.connect(address);
+
+		// the block starts empty, with the first one already asked for
+		block = ByteBuffer.allocateDirect(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+		block.limit(0);
+		requestBlock();
+	}
+
+	/**
+	 * ask the server for the next block
+	 *
+	 * @throws IOException if the request can not be sent
+	 */
+	private void requestBlock() throws IOException {
+
+		request.clear();
+		request.putInt(blockSize).flip();
+		while (request.hasRemaining()) {
+			channel.write(request);
+		}
+	}
+
+	/**
+	 * read the block asked for last, and ask for the one after it
+	 */
+	private void refill() {
+
+		try {
+			block.clear();
+			while (block.hasRemaining()) {
+				if (channel.read(block) < 0) throw new EOFException("random server closed the connection");
+			}
+			block.flip();
+			requestBlock();
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * random bits from the block
+	 *
+	 * @param bits - requested bits, ranges from 1 to 32
+	 */
+	@Override
+	protected synchronized int next(final int bits) {
+
+		if (block.remaining() < Integer.BYTES) refill();
+		return block.getInt() >>> (32 - bits);
+	}
+
+	/**
+	 * 64 random bits from the block
+	 */
+	@Override
+	protected synchronized long nextLong64() {
+
+		if (block.remaining() < Long.BYTES) refill();
+		return block.getLong();
+	}
+
+	/**
+	 * fill a buffer with bytes copied from the blocks
+	 *
+	 * @param buffer buffer to fill
+	 */
+	@Override
+	public synchronized void fill(final ByteBuffer buffer) {
+
+		while (buffer.hasRemaining()) {
+			if (!block.hasRemaining()) refill();
+
+			final int count = Math.min(block.remaining(), buffer.remaining());
+			final int limit = block.limit();
+			block.limit(block.position() + count);
+			buffer.put(block);
+			block.limit(limit);
+		}
+	}
+
+	/**
+	 * the server owns the seed. Called by the Random constructor.
+	 */
+	@Override
+	public void setSeed(final long seed) {
+	}
+
+	/**
+	 * the server owns the state, so the input is consumed and ignored
+	 */
+	@Override
+	public void absorb(final ByteBuffer input) {
+		input.position(input.limit());
+	}
+
+	/**
+	 * a new connection to the same server, which gets different bytes
+	 *
+	 * @return new generator
+	 */
+	@Override
+	public RemoteRandom split() {
+
+		try {
+			return new RemoteRandom(address, blockSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * close the connection
+	 *
+	 * @throws IOException if the socket can not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		throw new NotSerializableException(getClass().getName());
+	}
+
+	private void readObject(final ObjectInputStream in) throws IOException {
+		throw new NotSerializableException(getClass().getName());
+	}
+}
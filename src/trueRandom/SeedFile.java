@@ -0,0 +1,215 @@
+package trueRandom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import internetEntropy.EntropyHub;
+import prng.ExtendedRandom;
+
+/**
+ * seed file, like systemd-random-seed. A generator started from the file is seeded at once,
+ * without waiting for the system entropy source or the network, and without a warm up.
+ *
+ * The file is rewritten with new output as soon as it has been loaded, so the same seed 
+ * is never used twice, and again periodically and at shutdown. Writes go to a temporary
+ * file that is forced to disk and then moved over the old one, so a crash leaves either
+ * the old seed or the new one. The periodic saves run on the EntropyHub threads.
+ *
+ *   copyright 2019 Matthew Clark
+ 
+     This file is part of TrueRandom.
+
+    TrueRandom is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    TrueRandom is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with TrueRandom.  If not, see <https://www.gnu.org/licenses/>.
+
+ * @author mclark
+ *
+ */
+public class SeedFile {
+
+	/* system property naming the seed file */
+	public final static String PROPERTY = "trueRandom.seedFile";
+
+	final static int SEED_SIZE = 512;            // bytes written
+	final static int MIN_SIZE = 32;              // fewer bytes are not used as a seed
+	final static long SAVE_INTERVAL = 1000 * 60 * 10; // milliseconds between saves
+
+	private final Path path;
+	private ScheduledFuture<?> saver = null;
+	private Thread hook = null;
+
+	/**
+	 * seed file at a path
+	 *
+	 * @param path file path
+	 */
+	public SeedFile(final Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * seed file named by the trueRandom.seedFile system property
+	 *
+	 * @return seed file, or null if the property is not set
+	 */
+	public static SeedFile fromProperty() {
+
+		final String name = System.getProperty(PROPERTY);
+		return name == null || name.isEmpty() ? null : new SeedFile(Paths.get(name));
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * read the saved seed, at most SEED_SIZE bytes of the file, followed by the current
+	 * time so that processes started from the same file diverge.
+	 *
+	 * @return seed bytes, or null if there is no usable seed
+	 */
+	public byte[] load() {
+
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+			// read at most SEED_SIZE bytes, so a larger file can not fill the room for the times
+			final ByteBuffer buffer = ByteBuffer.allocate(SEED_SIZE + 2 * Long.BYTES);
+			buffer.limit(SEED_SIZE);
+			while (buffer.hasRemaining() && channel.read(buffer) > 0);
+
+			if (buffer.position() < MIN_SIZE) return null;
+
+			buffer.limit(buffer.capacity());
+			buffer.putLong(System.nanoTime());
+			buffer.putLong(System.currentTimeMillis());
+
+			final byte[] result = new byte[buffer.position()];
+			buffer.flip().get(result);
+			return result;
+
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			// a file that can not be read as a seed is no seed
+			System.err.println("error reading seed file " + path + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * write a new seed from a generator, atomically replacing the file
+	 *
+	 * @param random generator to take the seed from
+	 * @throws IOException if the file can not be written
+	 */
+	public void save(final ExtendedRandom random) throws IOException {
+
+		final byte[] seed = new byte[SEED_SIZE];
+		random.nextBytes(seed);
+
+		final Path directory = path.toAbsolutePath().getParent();
+		final String prefix = path.getFileName().toString();
+		Path temp;
+		try {
+			temp = Files.createTempFile(directory, prefix, ".tmp",
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			temp = Files.createTempFile(directory, prefix, ".tmp");
+		}
+
+		try {
+			try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				final ByteBuffer buffer = ByteBuffer.wrap(seed);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * save without throwing, reporting errors
+	 *
+	 * @param random generator to take the seed from
+	 */
+	private void trySave(final ExtendedRandom random) {
+		try {
+			save(random);
+		} catch (IOException e) {
+			System.err.println("error writing seed file " + path + ": " + e);
+		}
+	}
+
+	/**
+	 * save a seed from the generator now, and then periodically and at shutdown
+	 *
+	 * @param random generator to take the seeds from
+	 */
+	public synchronized void keepSaved(final ExtendedRandom random) {
+
+		trySave(random);
+
+		if (saver != null) return;
+
+		saver = EntropyHub.getInstance().schedule(() -> trySave(random), SAVE_INTERVAL, TimeUnit.MILLISECONDS);
+
+		hook = new Thread(() -> {
+			synchronized (this) {
+				if (saver != null) trySave(random);
+			}
+		}, "seed file");
+		Runtime.getRuntime().addShutdownHook(hook);
+	}
+
+	/**
+	 * save a last seed from the generator, and stop the periodic and shutdown saves.
+	 * The shutdown hook is removed, so it no longer holds on to the generator.
+	 *
+	 * @param random generator to take the seed from
+	 */
+	public synchronized void stop(final ExtendedRandom random) {
+
+		if (saver == null) return;
+
+		trySave(random);
+		saver.cancel(false);
+		saver = null;
+
+		try {
+			Runtime.getRuntime().removeShutdownHook(hook);
+		} catch (IllegalStateException e) {
+			// already shutting down, the hook sees saver is null and does nothing
+		}
+		hook = null;
+	}
+}
@@ -1,14 +1,34 @@
 package trueRandom;
 
 
+import java.nio.file.Path;
+import java.security.SecureRandom;
 import java.util.Date;
-import internetEntropy.InternetEntropy;
-import internetEntropy.SeedGenerator;
+
+import javax.management.ObjectName;
+
+import internetEntropy.EntropyHub;
+import internetEntropy.ReseedPolicy;
+import prng.DigestRandom;
+import prng.ExtendedRandom;
+import prng.MersenneTwister;
 import prng.MultiRandom;
+import prng.MultiplyWithCarry;
+import prng.Random64;
+import prng.RandomMetrics;
+import prng.XORShift;
+import prng.Xoroshiro128;
 /**
  * this class attempts to create truly random numbers by gathering random entropy from the
  * internet and periodically injecting that into the seeds. That way the random number sequences
  * will be difficult to guess and reproduce.
+ * 
+ * With a seed file, given to the constructor or by the trueRandom.seedFile system property,
+ * a new instance starts from the saved seed in milliseconds, and keeps the file up to date.
+ * Without one it is seeded from SecureRandom and runs a warm up.
+ * 
+ * Each instance publishes its metrics as an MXBean named prng:type=TrueRandom until it is
+ * closed.
  * 
      copyright 2019 Matthew Clark
  
@@ -31,24 +51,204 @@ import prng.MultiRandom;
  * @author mclark
  *
  */
-public class TrueRandom extends MultiRandom {
+public class TrueRandom extends MultiRandom implements AutoCloseable {
 	
 	private static final long serialVersionUID = -7066899250421264044L;
 
-	InternetEntropy bytes = new InternetEntropy();
 	long entropyBytes = 0;
-	long calls = 0;
 
+	/* bytes of seed from SecureRandom when there is no seed file */
+	final static int SECURE_SEED_SIZE = 32;
+	
+	private transient final SeedFile seedFile;
+	private transient final EntropyHub.Registration registration;
+	private transient final ObjectName metricsName;
+
+	/**
+	 * create a TrueRandom, using the seed file named by the trueRandom.seedFile system 
+	 * property if it is set.
+	 */
 	public TrueRandom() {
+		this(SeedFile.fromProperty());
+	}
+	
+	/**
+	 * create a TrueRandom started from a seed file. The file is created if it does not
+	 * exist, and is rewritten straight away and then periodically and at shutdown.
+	 * 
+	 * @param seedFile path of the seed file
+	 */
+	public TrueRandom(final Path seedFile) {
+		this(new SeedFile(seedFile));
+	}
+	
+	private TrueRandom(final SeedFile seedFile) {
+		this(seedFile, seedFile == null ? null : seedFile.load());
+	}
+	
+	/**
+	 * create from the saved seed, or from SecureRandom with a warm up if there is none
+	 * 
+	 * @param seedFile seed file, or null
+	 * @param saved seed read from the file, or null
+	 */
+	private TrueRandom(final SeedFile seedFile, final byte[] saved) {
+		
+		super(saved != null ? saved : new SecureRandom().generateSeed(SECURE_SEED_SIZE), saved == null);
+		
+		// write a new seed at once so the loaded one is never used again
+		this.seedFile = seedFile;
+		if (seedFile != null) seedFile.keepSaved(this);
 		
-		new SeedGenerator(this);
+		registration = EntropyHub.getInstance().register(this);
+		metricsName = RandomMetrics.register(this, "TrueRandom");
 		entropyBytes = this.entropySize();
 	}
 	
+	/**
+	 * change when this generator is reseeded. The default reseeds after about a million
+	 * draws, or every five minutes while in use.
+	 * 
+	 * @param policy reseed policy
+	 */
+	public void setReseedPolicy(final ReseedPolicy policy) {
+		registration.setPolicy(policy);
+	}
+	
+	/**
+	 * number of reseeds from the entropy pools
+	 * 
+	 * @return reseeds
+	 */
+	public long getReseeds() {
+		return registration.getReseeds();
+	}
+	
+	/**
+	 * stop seeding this generator from the entropy hub, remove its metrics from JMX, and
+	 * save a last seed to the seed file if there is one. The generator can still be used, but gets no new entropy.
+	 */
+	public void close() {
+		
+		registration.close();
+		RandomMetrics.unregister(metricsName);
+		if (seedFile != null) seedFile.stop(this);
+	}
+	
 	public long getEntropyBytes() {
 		return entropyBytes;
 	}
 	
+	/*
+	 * generators used by the per thread instances. These are cheap to construct so
+	 * that creating threads does not become expensive.
+	 */
+	@SuppressWarnings("unchecked")
+	private static final Class<? extends ExtendedRandom>[] localGeneratorClasses 
+		= (Class<? extends ExtendedRandom>[]) new Class<?>[] {
+				XORShift.class,
+				Xoroshiro128.class,
+				MersenneTwister.class,
+				Random64.class,
+				MultiplyWithCarry.class,
+				DigestRandom.class
+		};
+	
+	/* bytes of seed for each per thread generator */
+	final static int LOCAL_SEED_SIZE = 64;
+	
+	/* number of draws between checks for new entropy, minus one */
+	final static int RESEED_CHECK = 0xFFF;
+	
+	/**
+	 * the single TrueRandom that seeds the per thread generators. It is created on first
+	 * use and is reseeded by the entropy hub.
+	 */
+	private static class Root {
+		static final TrueRandom random = new TrueRandom();
+	}
+	
+	private static final ThreadLocal<LocalRandom> local = new ThreadLocal<LocalRandom>() {
+		protected LocalRandom initialValue() {
+			return new LocalRandom(Root.random);
+		}
+	};
+	
+	/**
+	 * return the generator for the current thread, like ThreadLocalRandom.current(). 
+	 * Each thread gets its own MultiRandom, seeded from one shared TrueRandom, and 
+	 * reseeded from it whenever that one gets new entropy. The returned generator does 
+	 * not lock, and must not be shared with other threads.
+	 * 
+	 * The per thread streams are not independent of the root. Every 4096 draws, if the root
+	 * has had an entropy update, a thread absorbs a seed drawn from it, so the streams of
+	 * all threads depend on the root's output. They are as unpredictable as the root, but
+	 * are not streams that could be reproduced or reasoned about on their own.
+	 * 
+	 * @return the generator for this thread
+	 */
+	public static MultiRandom current() {
+		return local.get();
+	}
+	
+	/**
+	 * per thread generator. It is keyed with random bytes from the root generator, so
+	 * it skips the warm up run, and it does not synchronize.
+	 */
+	private static final class LocalRandom extends MultiRandom {
+		
+		private static final long serialVersionUID = 3571386407226612895L;
+		
+		private final TrueRandom root;
+		private long rootUpdates;
+		private int draws = 0;
+		
+		LocalRandom(final TrueRandom root) {
+			super(seed(root), localGeneratorClasses, false);
+			this.root = root;
+			rootUpdates = root.getEntropyUpdates();
+		}
+		
+		/**
+		 * draw a seed from the root generator
+		 * @param root root generator
+		 * @return seed bytes
+		 */
+		private static byte[] seed(final TrueRandom root) {
+			final byte[] seed = new byte[LOCAL_SEED_SIZE];
+			root.nextBytes(seed);
+			return seed;
+		}
+		
+		/**
+		 * every few thousand draws check whether the root generator has new entropy 
+		 * and if so absorb a seed from it.
+		 */
+		private void checkReseed() {
+			
+			if ((++draws & RESEED_CHECK) == 0 && root.getEntropyUpdates() != rootUpdates) {
+				rootUpdates = root.getEntropyUpdates();
+				absorb(seed(root));
+			}
+		}
+		
+		/**
+		 * next integer without locking.
+		 */
+		public int nextInt() {
+			checkReseed();
+			return dispatch();
+		}
+		
+		/**
+		 * next 64 bits without locking.
+		 */
+		protected long nextLong64() {
+			checkReseed();
+			return dispatchLong();
+		}
+	}
+	
 
 
 	/**